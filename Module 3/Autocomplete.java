@@ -1,29 +1,333 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Autocomplete.
+ *
+ * <p>Queries read an immutable index through a single volatile reference,
+ * so any number of threads can query one instance without locking while
+ * reload swaps in a freshly built index.
  */
 public class Autocomplete {
    
-   private Term[] terms;
+   private volatile Index index;
+   private final AtomicLong versions = new AtomicLong();
+   private final Object publishLock = new Object();
+   private final boolean parallel;
+   private final boolean normalized;
+   private boolean compacting;
+   private volatile ResultCache cache;
+   private volatile AutocompleteMetrics metrics = AutocompleteMetrics.NONE;
+   
+   private static final int MAX_DELTA = 4096;
+   private static final AtomicLong GENERATIONS = new AtomicLong();
+   private static final int EYTZINGER_THRESHOLD = 1 << 20;
+   private static final Comparator<Map.Entry<String, Term>> RANKING =
+      new Comparator<Map.Entry<String, Term>>() {
+         public int compare(Map.Entry<String, Term> a1, Map.Entry<String, Term> a2) {
+         
+            if (a1.getValue().weight != a2.getValue().weight) {
+               return Long.compare(a2.getValue().weight, a1.getValue().weight);
+            }
+            
+            return a1.getKey().compareTo(a2.getKey());
+         }
+      };
 
 	/**
 	 * Initializes a data structure from the given array of terms.
 	 * This method throws a NullPointerException if terms is null.
 	 */
    public Autocomplete(Term[] terms) {
-	   
+      this(terms, false);
+   }
+
+	/**
+	 * Initializes a data structure from the given array of terms. If parallel
+	 * is true, this and every later rebuild sort with Arrays.parallelSort and
+	 * build the weight index on all available cores.
+	 * This method throws a NullPointerException if terms is null.
+	 */
+   public Autocomplete(Term[] terms, boolean parallel) {
+      this(terms, parallel, false);
+   }
+
+	/**
+	 * Initializes a data structure from the given array of terms. If normalized
+	 * is true, each term is indexed under its QueryKey, so a prefix matches
+	 * regardless of case and accents while results keep their original
+	 * queries. Keys are computed once at build time, not per comparison.
+	 * This method throws a NullPointerException if terms is null.
+	 */
+   public Autocomplete(Term[] terms, boolean parallel, boolean normalized) {
+      this(new Index(copy(terms), false, parallel, normalized, 0), parallel, normalized);
+   }
+
+   private Autocomplete(Index index, boolean parallel, boolean normalized) {
+      this.index = index;
+      this.parallel = parallel;
+      this.normalized = normalized;
+   }
+
+	/**
+	 * Returns a data structure that takes ownership of the given array.
+	 * The sort is skipped if the caller knows the array is already in
+	 * ascending order of query.
+	 */
+   static Autocomplete adopt(Term[] terms, boolean sorted, boolean parallel) {
+      return new Autocomplete(new Index(terms, sorted, parallel, false, 0), parallel, false);
+   }
+
+	/**
+	 * Returns the terms served by this data structure in ascending order of
+	 * query, with any pending updates merged in.
+	 */
+   Term[] terms() {
+      return merge(index);
+   }
+
+	/**
+	 * Returns true if queries match case- and accent-insensitively.
+	 */
+   boolean normalized() {
+      return normalized;
+   }
+
+	/**
+	 * Replaces the terms served by this data structure. The new index is
+	 * built before it is published, so concurrent queries see either the old
+	 * terms or the new ones, never a mix. This method throws a
+	 * NullPointerException if terms is null.
+	 */
+   public void reload(Term[] terms) {
+   
       if (terms == null) {
          throw new NullPointerException();
       }
-     
-      this.terms = new Term[terms.length];
+      
+      publish(new Index(copy(terms), false, parallel, normalized, versions.incrementAndGet()));
+   }
+
+	/**
+	 * Builds a new index from the given terms on a background thread and
+	 * publishes it when done. Queries keep using the current index until then.
+	 * The array is copied before this method returns, so the caller may reuse
+	 * it. If several reloads overlap, the one started last wins. This method
+	 * throws a NullPointerException if terms is null.
+	 */
+   public CompletableFuture<Void> reloadAsync(Term[] terms) {
+   
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+      
+      final Term[] owned = copy(terms);
+      final long version = versions.incrementAndGet();
+      
+      return CompletableFuture.runAsync(new Runnable() {
+         public void run() {
+            publish(new Index(owned, false, parallel, normalized, version));
+         }
+      });
+   }
+
+   private void publish(Index built) {
+   
+      synchronized (publishLock) {
+      
+         if (built.version > index.version) {
+            index = built;
+         }
+      }
+   }
+
+   private static Term[] copy(Term[] terms) {
+   
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+      
+      Term[] a = new Term[terms.length];
       
       for (int i = 0; i < terms.length; i++) {
-         this.terms[i] = terms[i];
+      
+         if (terms[i] == null) {
+            throw new NullPointerException();
+         }
+         
+         a[i] = terms[i];
+      }
+      
+      return a;
+   }
+
+	/**
+	 * Changes the weight of every term with the given query. The change is
+	 * kept in a small delta next to the sorted array instead of re-sorting it.
+	 * This method throws a NullPointerException if query is null, and an
+	 * IllegalArgumentException if newWeight is negative or no term has the
+	 * given query.
+	 */
+   public void updateWeight(String query, long newWeight) {
+   
+      if (query == null) {
+         throw new NullPointerException();
+      }
+      
+      Term term = new Term(query, newWeight);
+      
+      synchronized (publishLock) {
+      
+         Index idx = index;
+         long range = exactRange(idx, query);
+         
+         if (BinarySearch.first(range) == BinarySearch.last(range)
+            && !idx.delta.containsKey(sortKey(idx, query))) {
+            throw new IllegalArgumentException();
+         }
+         
+         update(idx, term);
+      }
+   }
+
+	/**
+	 * Adds the given term. If terms with the same query already exist, they are
+	 * replaced by this one. The term is kept in a small delta next to the sorted
+	 * array instead of re-sorting it. This method throws a NullPointerException
+	 * if term is null.
+	 */
+   public void addTerm(Term term) {
+   
+      if (term == null) {
+         throw new NullPointerException();
+      }
+      
+      synchronized (publishLock) {
+         update(index, term);
+      }
+   }
+
+   /**
+    * Publishes idx with term added to its delta. Base terms with the same
+    * query are hidden. Once the delta grows past MAX_DELTA it is merged into
+    * the sorted array on a background thread. Callers hold publishLock.
+    */
+   private void update(Index idx, Term term) {
+   
+      TreeMap<String, Term> delta = new TreeMap<String, Term>(idx.delta);
+      delta.put(sortKey(idx, term.query), term);
+      
+      index = new Index(idx, delta, hide(idx.hidden, exactRange(idx, term.query)));
+      
+      if (delta.size() >= MAX_DELTA && !compacting) {
+      
+         compacting = true;
+         
+         CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+               compact();
+            }
+         });
       }
-     
-      Arrays.sort(this.terms);
+   }
+
+   /**
+    * Merges the delta of the current index into a new sorted array in linear
+    * time. Updates published while the merge runs are carried over; if the
+    * terms were reloaded meanwhile, the merge is dropped.
+    */
+   private void compact() {
+   
+      Index snapshot = index;
+      List<Map.Entry<String, Term>> extra = new ArrayList<Map.Entry<String, Term>>(snapshot.delta.entrySet());
+      Index merged = new Index(new PackedTerms(snapshot.terms, snapshot.hidden, extra),
+         parallel, snapshot.version);
+      
+      synchronized (publishLock) {
+      
+         compacting = false;
+         Index current = index;
+         
+         if (current.version != snapshot.version) {
+            return;
+         }
+         
+         TreeMap<String, Term> delta = new TreeMap<String, Term>();
+         int[] hidden = new int[0];
+         
+         for (Map.Entry<String, Term> e : current.delta.entrySet()) {
+         
+            if (snapshot.delta.get(e.getKey()) != e.getValue()) {
+               delta.put(e.getKey(), e.getValue());
+               hidden = hide(hidden, exactRange(merged, e.getValue().query));
+            }
+         }
+         
+         index = new Index(merged, delta, hidden);
+      }
+   }
+
+   /**
+    * Returns the visible terms of idx in ascending order of sort key.
+    */
+   private static Term[] merge(Index idx) {
+   
+      return rangeTerms(idx, BinarySearch.range(0, idx.terms.size()), "");
+   }
+
+	/**
+	 * Turns on a result cache holding at most capacity (prefix, k) results and
+	 * returns it, so its hit and miss counters can be read. Cached results are
+	 * tied to the index they came from, so updates and reloads invalidate them.
+	 * While the cache is on, each query briefly locks one stripe of it.
+	 * This method throws an IllegalArgumentException if capacity is less than one.
+	 */
+   public ResultCache enableCache(int capacity) {
+   
+      ResultCache c = new ResultCache(capacity);
+      cache = c;
+      
+      return c;
+   }
+
+	/**
+	 * Turns off the result cache.
+	 */
+   public void disableCache() {
+      cache = null;
+   }
+
+	/**
+	 * Sends a record of every allMatches, topMatches and fuzzyMatches call to
+	 * the given metrics. Installing AutocompleteMetrics.NONE turns measurement
+	 * off again. This method throws a NullPointerException if metrics is null.
+	 */
+   public void setMetrics(AutocompleteMetrics metrics) {
+   
+      if (metrics == null) {
+         throw new NullPointerException();
+      }
+      
+      this.metrics = metrics;
    }
 
 	/** 
@@ -36,22 +340,742 @@ public class Autocomplete {
          throw new NullPointerException();
       }
       
-      int a1 = BinarySearch.firstIndexOf(terms, new Term(prefix, -1), Term.byPrefixOrder(prefix.length())); 
-      int a2 = BinarySearch.lastIndexOf(terms, new Term(prefix, -1), Term.byPrefixOrder(prefix.length()));
+      AutocompleteMetrics m = metrics;
       
-      if (a1 == -1) {
-        
-         return new Term[0];
+      if (m == AutocompleteMetrics.NONE) {
+         return allMatches(index, prefix, Term.byDescendingWeightOrder());
       }
-     
-      Term[] a = new Term[1 + a2 - a1];
-     
-      for (int i = 0; i < a.length; i++) {
-         a[i] = terms[a1++];
+      
+      long[] searched = new long[1];
+      Index idx = new Index(index, searched);
+      Probe probe = new Probe();
+      Counting<Term> order = new Counting<Term>(Term.byDescendingWeightOrder());
+      Term[] a = allMatches(idx, prefix, order);
+      probe.record(m, "allMatches", prefix, a.length, searched[0] + order.count);
+      
+      return a;
+   }
+
+   private Term[] allMatches(Index idx, String prefix, Comparator<Term> order) {
+   
+      String key = searchKey(idx, prefix);
+      ResultCache c = cache;
+      
+      if (c != null) {
+      
+         Term[] hit = c.get(key, -1, idx.generation);
+         
+         if (hit != null) {
+            return hit;
+         }
       }
       
-      Arrays.sort(a, Term.byDescendingWeightOrder());
+      Term[] a = rangeTerms(idx, prefixRange(idx, key), key);
+      
+      Arrays.sort(a, order);
+      
+      if (c != null) {
+         c.put(key, -1, idx.generation, a);
+      }
      
       return a;
    }
-}
\ No newline at end of file
+
+	/** 
+	 * Returns the k heaviest terms that start with the given prefix, in descending
+	 * order of weight. Only the returned terms are visited, so the cost does not
+	 * grow with the size of the matching range. This method throws a
+	 * NullPointerException if prefix is null, and an IllegalArgumentException if
+	 * k is negative.
+	 */
+   public Term[] topMatches(String prefix, int k) {
+   
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+      
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+      
+      AutocompleteMetrics m = metrics;
+      
+      if (m == AutocompleteMetrics.NONE) {
+         return topMatches(index, prefix, k, RANKING);
+      }
+      
+      long[] searched = new long[1];
+      Index idx = new Index(index, searched);
+      Probe probe = new Probe();
+      Counting<Map.Entry<String, Term>> ranking = new Counting<Map.Entry<String, Term>>(RANKING);
+      Term[] result = topMatches(idx, prefix, k, ranking);
+      probe.record(m, "topMatches", prefix, result.length, searched[0] + ranking.count);
+      
+      return result;
+   }
+
+   private Term[] topMatches(Index idx, String prefix, int k, Comparator<Map.Entry<String, Term>> ranking) {
+   
+      String key = searchKey(idx, prefix);
+      ResultCache c = cache;
+      
+      if (c != null) {
+      
+         Term[] hit = c.get(key, k, idx.generation);
+         
+         if (hit != null) {
+            return hit;
+         }
+      }
+      
+      long[] ranges = {prefixRange(idx, key)};
+      Term[] result = ranked(idx, ranges, deltaMatches(idx, key), k, ranking);
+      
+      if (c != null) {
+         c.put(key, k, idx.generation, result);
+      }
+      
+      return result;
+   }
+
+	/** 
+	 * Returns a stream of the terms that start with the given prefix, in the
+	 * order of topMatches. Terms are ranked as the stream is consumed, each at
+	 * a cost of O(log n), so a caller that takes only the first few pays only
+	 * for those. The stream reads the terms as they were when this method was
+	 * called. This method throws a NullPointerException if prefix is null.
+	 */
+   public Stream<Term> rankedMatches(String prefix) {
+   
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+      
+      Index idx = index;
+      String key = searchKey(idx, prefix);
+      long range = prefixRange(idx, key);
+      List<Map.Entry<String, Term>> extra = deltaMatches(idx, key);
+      int first = BinarySearch.first(range);
+      int last = BinarySearch.last(range);
+      long size = last - first - (rank(idx.hidden, last) - rank(idx.hidden, first)) + extra.size();
+      
+      Collections.sort(extra, RANKING);
+      
+      return StreamSupport.stream(Spliterators.spliterator(new RankedIterator(idx, range, extra),
+         size, Spliterator.ORDERED | Spliterator.NONNULL), false);
+   }
+
+	/**
+	 * Returns a stream of (prefix, matches) pairs for many prefixes at once,
+	 * where matches holds the k heaviest terms for the prefix in descending
+	 * order of weight, or all of them if k is negative. Prefixes are sorted
+	 * and the terms are swept once: each range search starts where the
+	 * previous prefix's range started, and a prefix that extends an earlier
+	 * one only searches inside that earlier range. Results are computed as
+	 * the stream is consumed, so only one is held at a time. Pairs come out
+	 * in ascending order of prefix, and every prefix sees the same snapshot
+	 * of the terms. This method throws a NullPointerException if prefixes is
+	 * null or holds a null.
+	 */
+   public Stream<Map.Entry<String, Term[]>> batchMatches(Collection<String> prefixes, int k) {
+   
+      if (prefixes == null) {
+         throw new NullPointerException();
+      }
+      
+      Index idx = index;
+      String[][] sorted = new String[prefixes.size()][];
+      int n = 0;
+      
+      for (String prefix : prefixes) {
+      
+         if (prefix == null) {
+            throw new NullPointerException();
+         }
+         
+         sorted[n++] = new String[] {searchKey(idx, prefix), prefix};
+      }
+      
+      Arrays.sort(sorted, new Comparator<String[]>() {
+         public int compare(String[] a1, String[] a2) {
+            return a1[0].compareTo(a2[0]);
+         }
+      });
+      
+      return StreamSupport.stream(Spliterators.spliterator(new BatchIterator(idx, sorted, k),
+         sorted.length, Spliterator.ORDERED | Spliterator.NONNULL), false);
+   }
+
+	/** 
+	 * Returns the k heaviest terms that start with a string within maxEdits
+	 * insertions, deletions or substitutions of the given prefix, in descending
+	 * order of weight. The sorted terms are walked with a Levenshtein automaton,
+	 * so only branches that can still match are visited. This method throws a
+	 * NullPointerException if prefix is null, and an IllegalArgumentException if
+	 * k is negative or maxEdits is not between 0 and FuzzyPrefix.MAX_EDITS.
+	 */
+   public Term[] fuzzyMatches(String prefix, int maxEdits, int k) {
+   
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+      
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+      
+      AutocompleteMetrics m = metrics;
+      
+      if (m == AutocompleteMetrics.NONE) {
+         return fuzzyMatches(index, prefix, maxEdits, k, RANKING);
+      }
+      
+      long[] searched = new long[1];
+      Index idx = new Index(index, searched);
+      Probe probe = new Probe();
+      Counting<Map.Entry<String, Term>> ranking = new Counting<Map.Entry<String, Term>>(RANKING);
+      Term[] result = fuzzyMatches(idx, prefix, maxEdits, k, ranking);
+      probe.record(m, "fuzzyMatches", prefix, result.length, searched[0] + ranking.count);
+      
+      return result;
+   }
+
+   private Term[] fuzzyMatches(Index idx, String prefix, int maxEdits, int k,
+         Comparator<Map.Entry<String, Term>> ranking) {
+   
+      String key = searchKey(idx, prefix);
+      long[] ranges = FuzzyPrefix.ranges(idx.terms, key, maxEdits);
+      List<Map.Entry<String, Term>> extra = new ArrayList<Map.Entry<String, Term>>();
+      
+      for (Map.Entry<String, Term> e : idx.delta.entrySet()) {
+      
+         if (FuzzyPrefix.matches(searchKey(idx, e.getValue().query), key, maxEdits)) {
+            extra.add(e);
+         }
+      }
+      
+      return ranked(idx, ranges, extra, k, ranking);
+   }
+
+   /**
+    * Returns the k heaviest visible terms in the given ranges of idx and in
+    * extra, a list of delta entries in ascending order of sort key that is
+    * reordered by this method using ranking.
+    */
+   private static Term[] ranked(Index idx, long[] ranges, List<Map.Entry<String, Term>> extra, int k,
+         Comparator<Map.Entry<String, Term>> ranking) {
+   
+      int skipped = 0;
+      
+      for (long range : ranges) {
+         skipped += rank(idx.hidden, BinarySearch.last(range)) - rank(idx.hidden, BinarySearch.first(range));
+      }
+      
+      int[] top = idx.weights.top(ranges, (int) Math.min((long) k + skipped, Integer.MAX_VALUE));
+      
+      Collections.sort(extra, ranking);
+      
+      List<Term> a = new ArrayList<Term>();
+      int i = 0;
+      int j = 0;
+      
+      while (a.size() < k && (i < top.length || j < extra.size())) {
+      
+         if (i < top.length && Arrays.binarySearch(idx.hidden, top[i]) >= 0) {
+            i++;
+         }
+         
+         else if (j == extra.size()
+            || (i < top.length && (idx.terms.weight(top[i]) > extra.get(j).getValue().weight
+            || (idx.terms.weight(top[i]) == extra.get(j).getValue().weight
+            && idx.terms.compareTo(top[i], extra.get(j).getKey()) < 0)))) {
+            a.add(idx.terms.term(top[i++]));
+         }
+         
+         else {
+            a.add(extra.get(j++).getValue());
+         }
+      }
+      
+      return a.toArray(new Term[a.size()]);
+   }
+
+   /**
+    * Returns the visible terms in the given range of idx, merged with the
+    * delta terms whose search key starts with prefix, in ascending order of
+    * sort key.
+    */
+   private static Term[] rangeTerms(Index idx, long range, String prefix) {
+   
+      int first = BinarySearch.first(range);
+      int last = BinarySearch.last(range);
+      
+      if (idx.delta.isEmpty()) {
+      
+         Term[] a = new Term[last - first];
+         
+         for (int i = 0; i < a.length; i++) {
+            a[i] = idx.terms.term(first + i);
+         }
+         
+         return a;
+      }
+      
+      List<Map.Entry<String, Term>> extra = deltaMatches(idx, prefix);
+      int h = rank(idx.hidden, first);
+      int hEnd = rank(idx.hidden, last);
+      Term[] a = new Term[last - first - (hEnd - h) + extra.size()];
+      int n = 0;
+      int j = 0;
+      
+      for (int i = first; i < last; i++) {
+      
+         if (h < hEnd && idx.hidden[h] == i) {
+            h++;
+            continue;
+         }
+         
+         while (j < extra.size() && idx.terms.compareTo(i, extra.get(j).getKey()) > 0) {
+            a[n++] = extra.get(j++).getValue();
+         }
+         
+         a[n++] = idx.terms.term(i);
+      }
+      
+      while (j < extra.size()) {
+         a[n++] = extra.get(j++).getValue();
+      }
+      
+      return a;
+   }
+
+   /**
+    * Returns the delta entries of idx whose search key starts with prefix,
+    * in ascending order of sort key.
+    */
+   private static List<Map.Entry<String, Term>> deltaMatches(Index idx, String prefix) {
+   
+      List<Map.Entry<String, Term>> list = new ArrayList<Map.Entry<String, Term>>();
+      
+      for (Map.Entry<String, Term> e : idx.delta.tailMap(prefix, true).entrySet()) {
+      
+         if (!e.getKey().startsWith(prefix)) {
+            break;
+         }
+         
+         list.add(e);
+      }
+      
+      return list;
+   }
+
+   /**
+    * Returns the range of terms in idx whose query equals the given query.
+    */
+   private static long exactRange(Index idx, String query) {
+   
+      String key = searchKey(idx, query);
+      long range = prefixRange(idx, key);
+      int first = BinarySearch.first(range);
+      int last = first;
+      
+      while (last < BinarySearch.last(range) && idx.terms.length(last) == key.length()) {
+         last++;
+      }
+      
+      if (idx.terms.normalized()) {
+      
+         String sortKey = sortKey(idx, query);
+         
+         while (first < last && idx.terms.compareTo(first, sortKey) < 0) {
+            first++;
+         }
+         
+         while (last > first && idx.terms.compareTo(last - 1, sortKey) > 0) {
+            last--;
+         }
+      }
+      
+      return BinarySearch.range(first, last);
+   }
+
+   /**
+    * Returns the range of terms in idx whose search key starts with key,
+    * through the Eytzinger layout when idx has one.
+    */
+   private static long prefixRange(Index idx, String key) {
+   
+      if (idx.layout != null) {
+         return idx.layout.prefixRange(key);
+      }
+      
+      return BinarySearch.prefixRange(idx.terms, key);
+   }
+
+   /**
+    * Returns the key under which idx searches for s.
+    */
+   private static String searchKey(Index idx, String s) {
+      return idx.terms.normalized() ? QueryKey.of(s) : s;
+   }
+
+   /**
+    * Returns the key by which idx orders a term with the given query.
+    */
+   private static String sortKey(Index idx, String query) {
+      return idx.terms.normalized() ? QueryKey.of(query) + '\0' + query : query;
+   }
+
+   /**
+    * Returns a copy of the sorted array hidden with the given range added.
+    */
+   private static int[] hide(int[] hidden, long range) {
+   
+      int first = BinarySearch.first(range);
+      int last = BinarySearch.last(range);
+      int at = rank(hidden, first);
+      
+      if (first == last || (at < hidden.length && hidden[at] == first)) {
+         return hidden;
+      }
+      
+      int[] a = new int[hidden.length + last - first];
+      System.arraycopy(hidden, 0, a, 0, at);
+      
+      for (int i = first; i < last; i++) {
+         a[at + i - first] = i;
+      }
+      
+      System.arraycopy(hidden, at, a, at + last - first, hidden.length - at);
+      
+      return a;
+   }
+
+   /**
+    * Returns the number of entries in the sorted array a less than key.
+    */
+   private static int rank(int[] a, int key) {
+   
+      int i = Arrays.binarySearch(a, key);
+      
+      return i < 0 ? -i - 1 : i;
+   }
+
+   /**
+    * Sweeps a sorted batch of (search key, prefix) pairs over one index.
+    */
+   private static final class BatchIterator implements Iterator<Map.Entry<String, Term[]>> {
+      private final Index idx;
+      private final String[][] prefixes;
+      private final int k;
+      private final String[] enclosing;
+      private final int[] enclosingEnd;
+      private int depth;
+      private int start;
+      private int next;
+   
+      BatchIterator(Index idx, String[][] prefixes, int k) {
+         this.idx = idx;
+         this.prefixes = prefixes;
+         this.k = k;
+         this.enclosing = new String[prefixes.length];
+         this.enclosingEnd = new int[prefixes.length];
+      }
+      
+      @Override
+      public boolean hasNext() {
+         return next < prefixes.length;
+      }
+      
+      @Override
+      public Map.Entry<String, Term[]> next() {
+      
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         
+         String key = prefixes[next][0];
+         String prefix = prefixes[next++][1];
+         
+         while (depth > 0 && !key.startsWith(enclosing[depth - 1])) {
+            depth--;
+         }
+         
+         int end = depth > 0 ? enclosingEnd[depth - 1] : idx.terms.size();
+         start = BinarySearch.lowerBound(idx.terms, key, start, end);
+         int last = BinarySearch.gallopUpperBound(idx.terms, key, start, end);
+         
+         enclosing[depth] = key;
+         enclosingEnd[depth++] = last;
+         
+         long range = BinarySearch.range(start, last);
+         Term[] matches;
+         
+         if (k < 0) {
+            matches = rangeTerms(idx, range, key);
+            Arrays.sort(matches, Term.byDescendingWeightOrder());
+         }
+         
+         else {
+            matches = ranked(idx, new long[] {range}, deltaMatches(idx, key), k, RANKING);
+         }
+         
+         return new AbstractMap.SimpleImmutableEntry<String, Term[]>(prefix, matches);
+      }
+   }
+
+   /**
+    * Lazy merge of the visible terms of a range, in descending order of
+    * weight from the weight index, with delta terms already in that order.
+    */
+   private static final class RankedIterator implements Iterator<Term> {
+      private final Index idx;
+      private final PrimitiveIterator.OfInt top;
+      private final List<Map.Entry<String, Term>> extra;
+      private int pending = -1;
+      private int j;
+   
+      RankedIterator(Index idx, long range, List<Map.Entry<String, Term>> extra) {
+         this.idx = idx;
+         this.top = idx.weights.descending(new long[] {range});
+         this.extra = extra;
+      }
+      
+      @Override
+      public boolean hasNext() {
+      
+         while (pending < 0 && top.hasNext()) {
+         
+            int i = top.nextInt();
+            
+            if (Arrays.binarySearch(idx.hidden, i) < 0) {
+               pending = i;
+            }
+         }
+         
+         return pending >= 0 || j < extra.size();
+      }
+      
+      @Override
+      public Term next() {
+      
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         
+         if (j == extra.size()
+            || (pending >= 0 && (idx.terms.weight(pending) > extra.get(j).getValue().weight
+            || (idx.terms.weight(pending) == extra.get(j).getValue().weight
+            && idx.terms.compareTo(pending, extra.get(j).getKey()) < 0)))) {
+         
+            Term t = idx.terms.term(pending);
+            pending = -1;
+            
+            return t;
+         }
+         
+         return extra.get(j++).getValue();
+      }
+   }
+
+   /**
+    * Comparator that counts its invocations, for metrics.
+    */
+   private static final class Counting<T> implements Comparator<T> {
+      private final Comparator<T> comparator;
+      private long count;
+   
+      Counting(Comparator<T> comparator) {
+         this.comparator = comparator;
+      }
+      
+      @Override
+      public int compare(T o1, T o2) {
+         count++;
+         return comparator.compare(o1, o2);
+      }
+   }
+
+   /**
+    * Packed terms that add every key comparison they make to a counter, for
+    * metrics. They share the arrays of the terms they view.
+    */
+   private static final class CountingTerms extends PackedTerms {
+      private final long[] count;
+   
+      CountingTerms(PackedTerms terms, long[] count) {
+         super(terms);
+         this.count = count;
+      }
+      
+      @Override
+      public int comparePrefix(int i, String prefix) {
+         count[0]++;
+         return super.comparePrefix(i, prefix);
+      }
+      
+      @Override
+      public int compareTo(int i, String sortKey) {
+         count[0]++;
+         return super.compareTo(i, sortKey);
+      }
+   }
+
+   /**
+    * Start time and allocation counter of one measured call.
+    */
+   private static final class Probe {
+      private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+      private static final boolean ALLOCATION = THREADS instanceof com.sun.management.ThreadMXBean
+         && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported()
+         && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+      private final long start;
+      private final long allocated;
+   
+      Probe() {
+         this.allocated = allocated();
+         this.start = System.nanoTime();
+      }
+      
+      void record(AutocompleteMetrics m, String operation, String prefix, int matches, long comparisons) {
+      
+         long nanos = System.nanoTime() - start;
+         long bytes = ALLOCATION ? allocated() - allocated : -1;
+         
+         m.record(operation, prefix, matches, nanos, comparisons, bytes);
+      }
+      
+      private static long allocated() {
+      
+         if (!ALLOCATION) {
+            return -1;
+         }
+         
+         return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+   }
+
+   /**
+    * Immutable snapshot of the packed sorted terms, their weight index, and
+    * the terms added or updated since the array was last sorted. Indexes
+    * too large for the caches, up to EytzingerIndex.MAX_SIZE terms, also
+    * carry an Eytzinger layout for lookups.
+    * Every snapshot has its own generation, which keys cached results
+    * without keeping the snapshot reachable.
+    */
+   private static final class Index {
+      private final PackedTerms terms;
+      private final WeightIndex weights;
+      private final EytzingerIndex layout;
+      private final long version;
+      private final long generation;
+      private final TreeMap<String, Term> delta;
+      private final int[] hidden;
+   
+      Index(Term[] terms, boolean sorted, boolean parallel, boolean normalized, long version) {
+         this(normalized ? sortAndPackNormalized(terms, parallel) : sortAndPack(terms, sorted, parallel),
+            parallel, version);
+      }
+      
+      Index(PackedTerms terms, boolean parallel, long version) {
+         this.terms = terms;
+         this.weights = new WeightIndex(terms.weights(), parallel);
+         this.layout = terms.size() >= EYTZINGER_THRESHOLD && terms.size() <= EytzingerIndex.MAX_SIZE
+            ? new EytzingerIndex(terms) : null;
+         this.version = version;
+         this.generation = GENERATIONS.incrementAndGet();
+         this.delta = new TreeMap<String, Term>();
+         this.hidden = new int[0];
+      }
+      
+      Index(Index base, TreeMap<String, Term> delta, int[] hidden) {
+         this.terms = base.terms;
+         this.weights = base.weights;
+         this.layout = base.layout;
+         this.version = base.version;
+         this.generation = GENERATIONS.incrementAndGet();
+         this.delta = delta;
+         this.hidden = hidden;
+      }
+      
+      /**
+       * A view of base, for one measured query, that adds every key probe
+       * of its searches and every comparison in its ranking heap to
+       * searched[0]. An Eytzinger descent counts one probe per node for the
+       * packed heads, plus one for each full key it reads on a tie. The view
+       * keeps the generation of base, so it shares its cached results.
+       */
+      Index(Index base, long[] searched) {
+         this.terms = new CountingTerms(base.terms, searched);
+         this.weights = new WeightIndex(base.weights, searched);
+         this.layout = base.layout == null ? null : new EytzingerIndex(base.layout, terms, searched);
+         this.version = base.version;
+         this.generation = base.generation;
+         this.delta = base.delta;
+         this.hidden = base.hidden;
+      }
+      
+      private static PackedTerms sortAndPack(Term[] terms, boolean sorted, boolean parallel) {
+      
+         if (!sorted && parallel) {
+            Arrays.parallelSort(terms);
+         }
+         
+         else if (!sorted) {
+            Arrays.sort(terms);
+         }
+         
+         return new PackedTerms(terms, parallel);
+      }
+      
+      private static PackedTerms sortAndPackNormalized(final Term[] terms, boolean parallel) {
+      
+         Keyed[] keyed = new Keyed[terms.length];
+         IntFunction<Keyed> key = new IntFunction<Keyed>() {
+            public Keyed apply(int i) {
+               return new Keyed(QueryKey.of(terms[i].query), terms[i]);
+            }
+         };
+         
+         if (parallel) {
+            Arrays.parallelSetAll(keyed, key);
+            Arrays.parallelSort(keyed);
+         }
+         
+         else {
+            Arrays.setAll(keyed, key);
+            Arrays.sort(keyed);
+         }
+         
+         String[] keys = new String[terms.length];
+         
+         for (int i = 0; i < terms.length; i++) {
+            terms[i] = keyed[i].term;
+            keys[i] = keyed[i].key;
+         }
+         
+         return new PackedTerms(terms, keys, parallel);
+      }
+   }
+
+   /**
+    * A term paired with its search key, ordered by sort key.
+    */
+   private static final class Keyed implements Comparable<Keyed> {
+      private final String key;
+      private final Term term;
+   
+      Keyed(String key, Term term) {
+         this.key = key;
+         this.term = term;
+      }
+      
+      @Override
+      public int compareTo(Keyed other) {
+      
+         int cmp = key.compareTo(other.key);
+         
+         return cmp != 0 ? cmp : term.compareTo(other.term);
+      }
+   }
+}
@@ -0,0 +1,29 @@
+/**
+ * Receives one record per autocomplete query. Implementations must be
+ * thread safe, since queries run concurrently.
+ *
+ * <p>NONE is the default. While it is installed, Autocomplete skips all
+ * measurement, so uninstrumented queries pay only for one reference check.
+ */
+public interface AutocompleteMetrics {
+
+    /**
+     * Metrics that ignore every record.
+     */
+   AutocompleteMetrics NONE = new AutocompleteMetrics() {
+      public void record(String operation, String prefix, int matches, long nanos,
+            long comparisons, long allocatedBytes) {
+      }
+   };
+
+    /**
+     * Records one call of the named operation for the given prefix: the
+     * number of terms it returned, its wall-clock time, the number of
+     * comparisons it made, and the bytes it allocated on the calling thread,
+     * or -1 if the JVM cannot measure allocation. Comparisons cover the key
+     * probes of the prefix search, the weight comparisons of the ranking
+     * heap, and the comparator calls that order the result.
+     */
+   void record(String operation, String prefix, int matches, long nanos,
+         long comparisons, long allocatedBytes);
+}
@@ -94,4 +94,415 @@ public class BinarySearch {
       return -1;
    }
 
+    /**
+     * Returns the index of the first key in a[] that equals the search key,
+     * or -1 if no such key exists, searching outward from hint with steps
+     * that double each time. The cost grows with the log of the distance
+     * from hint to the answer, not with the log of a.length. This method
+     * throws a NullPointerException if any parameter is null, and an
+     * IllegalArgumentException if hint is not an index of a[].
+     */
+   public static <Key> int firstIndexOf(Key[] a, Key key, Comparator<Key> comparator, int hint) {
+      
+      if (a == null || key == null || comparator == null) {
+         throw new NullPointerException();
+      }
+      
+      if (hint < 0 || hint >= a.length) {
+         throw new IllegalArgumentException();
+      }
+      
+      int i = gallop(a, key, comparator, hint, false);
+      
+      return i < a.length && comparator.compare(key, a[i]) == 0 ? i : -1;
+   }
+
+    /**
+     * Returns the index of the last key in a[] that equals the search key,
+     * or -1 if no such key exists, searching outward from hint with steps
+     * that double each time. Passing the result of firstIndexOf as hint
+     * finds the end of a short run in a few probes. This method throws a
+     * NullPointerException if any parameter is null, and an
+     * IllegalArgumentException if hint is not an index of a[].
+     */
+   public static <Key> int lastIndexOf(Key[] a, Key key, Comparator<Key> comparator, int hint) {
+      
+      if (a == null || key == null || comparator == null) {
+         throw new NullPointerException();
+      }
+      
+      if (hint < 0 || hint >= a.length) {
+         throw new IllegalArgumentException();
+      }
+      
+      int i = gallop(a, key, comparator, hint, true) - 1;
+      
+      return i >= 0 && comparator.compare(key, a[i]) == 0 ? i : -1;
+   }
+
+    /**
+     * Returns the range [first, last) of keys in a[] that equal the search
+     * key, packed into a long by range(first, last). A single binary search
+     * runs until it hits an equal key, and both ends are then found by
+     * galloping out from that hit. An empty range means no key matches. This
+     * method throws a NullPointerException if any parameter is null.
+     */
+   public static <Key> long equalRange(Key[] a, Key key, Comparator<Key> comparator) {
+      
+      if (a == null || key == null || comparator == null) {
+         throw new NullPointerException();
+      }
+      
+      int first = 0;
+      int last = a.length;
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         int cmp = comparator.compare(key, a[mid]);
+         
+         if (cmp > 0) {
+            first = mid + 1;
+         }
+         
+         else if (cmp < 0) {
+            last = mid;
+         }
+         
+         else {
+         
+            return range(gallop(a, key, comparator, mid, false), gallop(a, key, comparator, mid, true));
+         }
+      }
+      
+      return range(first, first);
+   }
+
+    /**
+     * Returns the first index whose key sorts after the search key, if upper
+     * is true, or does not sort before it otherwise, galloping from hint.
+     */
+   private static <Key> int gallop(Key[] a, Key key, Comparator<Key> comparator, int hint, boolean upper) {
+      
+      if (before(a, key, comparator, hint, upper)) {
+      
+         int first = hint + 1;
+         
+         for (int step = 1; ; step *= 2) {
+         
+            if (step > a.length - first) {
+               return bound(a, key, comparator, first, a.length, upper);
+            }
+            
+            int probe = first + step - 1;
+            
+            if (!before(a, key, comparator, probe, upper)) {
+               return bound(a, key, comparator, first, probe, upper);
+            }
+            
+            first = probe + 1;
+         }
+      }
+      
+      int last = hint;
+      
+      for (int step = 1; ; step *= 2) {
+      
+         if (step > last) {
+            return bound(a, key, comparator, 0, last, upper);
+         }
+         
+         int probe = last - step;
+         
+         if (before(a, key, comparator, probe, upper)) {
+            return bound(a, key, comparator, probe + 1, last, upper);
+         }
+         
+         last = probe;
+      }
+   }
+
+    /**
+     * Binary search for the boundary gallop looks for, within a[first, last).
+     */
+   private static <Key> int bound(Key[] a, Key key, Comparator<Key> comparator, int first, int last, boolean upper) {
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         
+         if (before(a, key, comparator, mid, upper)) {
+            first = mid + 1;
+         }
+         
+         else {
+            last = mid;
+         }
+      }
+      
+      return first;
+   }
+
+    /**
+     * Returns true if a[i] lies before the boundary gallop looks for.
+     */
+   private static <Key> boolean before(Key[] a, Key key, Comparator<Key> comparator, int i, boolean upper) {
+      
+      int cmp = comparator.compare(key, a[i]);
+      
+      return upper ? cmp >= 0 : cmp > 0;
+   }
+
+    /**
+     * Returns the range [first, last) of terms in a[] whose query starts with
+     * the given prefix, packed into a long by range(first, last). Use first()
+     * and last() to unpack it. An empty range means no term matches. The array
+     * must be in ascending order of query. Characters are compared in place,
+     * so no Strings or comparators are created. This method throws a
+     * NullPointerException if any parameter is null.
+     */
+   public static long prefixRange(Term[] a, String prefix) {
+      
+      if (a == null || prefix == null) {
+         throw new NullPointerException();
+      }
+      
+      int first = 0;
+      int last = a.length;
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         int cmp = comparePrefix(a[mid].query, prefix);
+         
+         if (cmp < 0) {
+            first = mid + 1;
+         }
+         
+         else if (cmp > 0) {
+            last = mid;
+         }
+         
+         else {
+            
+            return range(lowerBound(a, prefix, first, mid), upperBound(a, prefix, mid + 1, last));
+         }
+      }
+      
+      return range(first, first);
+   }
+
+    /**
+     * Returns the index of the first term in a[first, last) whose query does
+     * not sort before the given prefix.
+     */
+   static int lowerBound(Term[] a, String prefix, int first, int last) {
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         
+         if (comparePrefix(a[mid].query, prefix) < 0) {
+            first = mid + 1;
+         }
+         
+         else {
+            last = mid;
+         }
+      }
+      
+      return first;
+   }
+
+    /**
+     * Returns the index of the first term in a[first, last) whose query sorts
+     * after every string that starts with the given prefix.
+     */
+   static int upperBound(Term[] a, String prefix, int first, int last) {
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         
+         if (comparePrefix(a[mid].query, prefix) <= 0) {
+            first = mid + 1;
+         }
+         
+         else {
+            last = mid;
+         }
+      }
+      
+      return first;
+   }
+
+    /**
+     * Returns the range [first, last) of packed terms whose query starts
+     * with the given prefix, packed into a long by range(first, last). Only
+     * the primitive arrays of a are read. This method throws a
+     * NullPointerException if any parameter is null.
+     */
+   public static long prefixRange(PackedTerms a, String prefix) {
+      
+      if (a == null || prefix == null) {
+         throw new NullPointerException();
+      }
+      
+      int first = 0;
+      int last = a.size();
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         int cmp = a.comparePrefix(mid, prefix);
+         
+         if (cmp < 0) {
+            first = mid + 1;
+         }
+         
+         else if (cmp > 0) {
+            last = mid;
+         }
+         
+         else {
+            
+            return range(gallopLowerBound(a, prefix, first, mid), gallopUpperBound(a, prefix, mid + 1, last));
+         }
+      }
+      
+      return range(first, first);
+   }
+
+    /**
+     * Returns lowerBound(a, prefix, first, mid) for a term at mid that starts
+     * with prefix, galloping down from mid so that short ranges take only a
+     * few probes.
+     */
+   static int gallopLowerBound(PackedTerms a, String prefix, int first, int mid) {
+      
+      for (int step = 1; ; step *= 2) {
+      
+         if (step > mid - first) {
+            return lowerBound(a, prefix, first, mid);
+         }
+         
+         int probe = mid - step;
+         
+         if (a.comparePrefix(probe, prefix) < 0) {
+            return lowerBound(a, prefix, probe + 1, mid);
+         }
+         
+         mid = probe;
+      }
+   }
+
+    /**
+     * Returns upperBound(a, prefix, first, last) when every term before first
+     * starts with prefix or sorts before it, galloping up from first so that
+     * short ranges take only a few probes.
+     */
+   static int gallopUpperBound(PackedTerms a, String prefix, int first, int last) {
+      
+      for (int step = 1; ; step *= 2) {
+      
+         if (step > last - first) {
+            return upperBound(a, prefix, first, last);
+         }
+         
+         int probe = first + step - 1;
+         
+         if (a.comparePrefix(probe, prefix) > 0) {
+            return upperBound(a, prefix, first, probe);
+         }
+         
+         first = probe + 1;
+      }
+   }
+
+    /**
+     * Returns the index of the first packed term in [first, last) whose query
+     * does not sort before the given prefix.
+     */
+   static int lowerBound(PackedTerms a, String prefix, int first, int last) {
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         
+         if (a.comparePrefix(mid, prefix) < 0) {
+            first = mid + 1;
+         }
+         
+         else {
+            last = mid;
+         }
+      }
+      
+      return first;
+   }
+
+    /**
+     * Returns the index of the first packed term in [first, last) whose query
+     * sorts after every string that starts with the given prefix.
+     */
+   static int upperBound(PackedTerms a, String prefix, int first, int last) {
+      
+      while (first < last) {
+      
+         int mid = first + (last - first) / 2;
+         
+         if (a.comparePrefix(mid, prefix) <= 0) {
+            first = mid + 1;
+         }
+         
+         else {
+            last = mid;
+         }
+      }
+      
+      return first;
+   }
+
+    /**
+     * Compares query with prefix using only the first prefix.length()
+     * characters of query. Returns zero if query starts with prefix.
+     */
+   static int comparePrefix(String query, String prefix) {
+      
+      int n = Math.min(query.length(), prefix.length());
+      
+      for (int i = 0; i < n; i++) {
+         
+         char c1 = query.charAt(i);
+         char c2 = prefix.charAt(i);
+         
+         if (c1 != c2) {
+            return c1 - c2;
+         }
+      }
+      
+      return query.length() < prefix.length() ? -1 : 0;
+   }
+
+    /**
+     * Packs the range [first, last) into a single long.
+     */
+   public static long range(int first, int last) {
+      return ((long) first << 32) | (last & 0xFFFFFFFFL);
+   }
+
+    /**
+     * Returns the inclusive start of a packed range.
+     */
+   public static int first(long range) {
+      return (int) (range >>> 32);
+   }
+
+    /**
+     * Returns the exclusive end of a packed range.
+     */
+   public static int last(long range) {
+      return (int) range;
+   }
+
 }
\ No newline at end of file
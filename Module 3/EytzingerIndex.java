@@ -0,0 +1,209 @@
+/**
+ * Search index over packed sorted terms laid out in Eytzinger (breadth-first)
+ * order: node k has its children at 2k and 2k + 1, so the first levels of
+ * every search share a few cache lines and the nodes a search may visit next
+ * are adjacent in memory. Each node holds the first four characters of its
+ * key packed into a long, so most probes never leave the node arrays; the
+ * full key is read only when those characters tie.
+ *
+ * <p>Searches have the same first/last semantics as BinarySearch.firstIndexOf
+ * and lastIndexOf under Term.byPrefixOrder, and return indices into the
+ * packed terms.
+ */
+public class EytzingerIndex {
+
+   private static final int HEAD_CHARS = 4;
+
+   /** The most terms a layout can hold, so that node numbers fit an int. */
+   static final int MAX_SIZE = (1 << 30) - 1;
+
+   private final PackedTerms terms;
+   private final int[] order;
+   private final long[] heads;
+   private final int size;
+   private final long[] probes;
+
+    /**
+     * Lays out the given packed terms in Eytzinger order. This method throws
+     * a NullPointerException if terms is null, and an
+     * IllegalArgumentException if it holds more than MAX_SIZE terms.
+     */
+   public EytzingerIndex(PackedTerms terms) {
+
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+
+      if (terms.size() > MAX_SIZE) {
+         throw new IllegalArgumentException();
+      }
+
+      this.terms = terms;
+      size = terms.size();
+      order = new int[size + 1];
+      heads = new long[size + 1];
+      order[0] = size;
+
+      probes = null;
+
+      fill(1, 0);
+   }
+
+    /**
+     * Shares the layout of base but reads full keys through terms, which
+     * must hold the same keys, and adds the number of packed head
+     * comparisons of every descent to probes[0]. Used to measure queries;
+     * base itself never counts.
+     */
+   EytzingerIndex(EytzingerIndex base, PackedTerms terms, long[] probes) {
+
+      this.terms = terms;
+      this.order = base.order;
+      this.heads = base.heads;
+      this.size = base.size;
+      this.probes = probes;
+   }
+
+   /**
+    * Fills the subtree rooted at node k from sorted index i onwards, in
+    * order, and returns the next unused sorted index.
+    */
+   private int fill(int k, int i) {
+
+      if (k > size) {
+         return i;
+      }
+
+      i = fill(2 * k, i);
+      order[k] = i;
+      heads[k] = head(i);
+
+      return fill(2 * k + 1, i + 1);
+   }
+
+    /**
+     * Returns the index of the first term whose key starts with prefix, or
+     * -1 if there is none. This method throws a NullPointerException if
+     * prefix is null.
+     */
+   public int firstIndexOf(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      int first = bound(prefix, false);
+
+      return first < size && terms.comparePrefix(first, prefix) == 0 ? first : -1;
+   }
+
+    /**
+     * Returns the index of the last term whose key starts with prefix, or -1
+     * if there is none. This method throws a NullPointerException if prefix
+     * is null.
+     */
+   public int lastIndexOf(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      int last = bound(prefix, true) - 1;
+
+      return last >= 0 && terms.comparePrefix(last, prefix) == 0 ? last : -1;
+   }
+
+    /**
+     * Returns the range [first, last) of terms whose key starts with prefix,
+     * packed by BinarySearch.range. The end of the range is found by
+     * galloping from its start, which stays within the sorted arrays the
+     * results are read from anyway. This method throws a
+     * NullPointerException if prefix is null.
+     */
+   public long prefixRange(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      int first = bound(prefix, false);
+
+      if (first == size || terms.comparePrefix(first, prefix) != 0) {
+         return BinarySearch.range(first, first);
+      }
+
+      return BinarySearch.range(first, BinarySearch.gallopUpperBound(terms, prefix, first + 1, size));
+   }
+
+   /**
+    * Returns the first sorted index whose key sorts after prefix, if upper
+    * is true, or does not sort before it otherwise. Each level moves to a
+    * child by adding a 0 or 1 to the node number rather than by taking one
+    * of two paths, and the answer is recovered from the bits of the final
+    * node. The comparison at each node still branches, in before, on
+    * whether the packed heads tie.
+    */
+   private int bound(String prefix, boolean upper) {
+
+      int n = Math.min(prefix.length(), HEAD_CHARS);
+      long mask = n == 0 ? 0 : -1L << (16 * (HEAD_CHARS - n));
+      long target = head(prefix) ^ Long.MIN_VALUE;
+      int k = 1;
+
+      while (k <= size) {
+         k = 2 * k + (before(k, mask, target, prefix, upper) ? 1 : 0);
+      }
+
+      if (probes != null) {
+         probes[0] += 31 - Integer.numberOfLeadingZeros(k);
+      }
+
+      k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+
+      return order[k];
+   }
+
+   /**
+    * Returns true if the key at node k lies before the boundary bound looks
+    * for, reading the full key only when the packed heads tie.
+    */
+   private boolean before(int k, long mask, long target, String prefix, boolean upper) {
+
+      long head = (heads[k] & mask) ^ Long.MIN_VALUE;
+
+      if (head != target) {
+         return head < target;
+      }
+
+      int cmp = terms.comparePrefix(order[k], prefix);
+
+      return upper ? cmp <= 0 : cmp < 0;
+   }
+
+   /**
+    * Returns the first characters of the key of term i packed into a long,
+    * padded with zeros.
+    */
+   private long head(int i) {
+
+      int length = terms.length(i);
+      long h = 0;
+
+      for (int j = 0; j < HEAD_CHARS; j++) {
+         h = h << 16 | (j < length ? terms.charAt(i, j) : 0);
+      }
+
+      return h;
+   }
+
+   private static long head(String s) {
+
+      long h = 0;
+
+      for (int j = 0; j < HEAD_CHARS; j++) {
+         h = h << 16 | (j < s.length() ? s.charAt(j) : 0);
+      }
+
+      return h;
+   }
+}
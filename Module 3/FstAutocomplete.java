@@ -0,0 +1,433 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Autocomplete backed by a minimal acyclic finite state transducer that maps
+ * each query to its weight. Queries that share a prefix share a path from
+ * the start state, and queries that share a suffix share the states that
+ * spell it, so a dictionary with much common structure takes a fraction of
+ * the memory of one Term per query. Weights are spread over the arcs: the
+ * weight of a query is the sum of the outputs on its path plus the final
+ * output of its last state. Answers the same queries as Autocomplete, in
+ * the same order.
+ */
+public class FstAutocomplete {
+
+   private int[] firstArc;
+   private long[] finals;
+   private long[] maxes;
+   private char[] labels;
+   private int[] targets;
+   private long[] outputs;
+   private int nodes;
+   private int arcs;
+   private int root;
+   private int size;
+
+	/**
+	 * Builds a minimal transducer from the given array of terms. If a query
+	 * occurs more than once, the heaviest of its weights is kept. This method
+	 * throws a NullPointerException if terms is null or holds a null.
+	 */
+   public FstAutocomplete(Term[] terms) {
+
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+
+      Term[] sorted = Arrays.copyOf(terms, terms.length);
+      Arrays.sort(sorted);
+
+      firstArc = new int[16];
+      finals = new long[16];
+      maxes = new long[16];
+      labels = new char[16];
+      targets = new int[16];
+      outputs = new long[16];
+
+      HashMap<String, Integer> register = new HashMap<String, Integer>();
+      List<Pending> frontier = new ArrayList<Pending>();
+      frontier.add(new Pending());
+      String previous = "";
+
+      for (int t = 0; t < sorted.length; t++) {
+
+         String word = sorted[t].query;
+         long weight = sorted[t].weight;
+
+         while (t + 1 < sorted.length && sorted[t + 1].query.equals(word)) {
+            weight = Math.max(weight, sorted[++t].weight);
+         }
+
+         int common = commonLength(previous, word);
+
+         for (int i = previous.length(); i > common; i--) {
+            frontier.get(i - 1).target(freeze(frontier.remove(i), register));
+         }
+
+         for (int i = common; i < word.length(); i++) {
+            frontier.get(i).add(word.charAt(i));
+            frontier.add(new Pending());
+         }
+
+         Pending last = frontier.get(word.length());
+         last.isFinal = true;
+         last.finalOutput = 0;
+
+         for (int i = 0; i < common; i++) {
+
+            Pending p = frontier.get(i);
+            long output = p.outputs[p.count - 1];
+            long shared = Math.min(output, weight);
+            p.outputs[p.count - 1] = shared;
+
+            if (output > shared) {
+               frontier.get(i + 1).prepend(output - shared);
+            }
+
+            weight -= shared;
+         }
+
+         if (common < word.length()) {
+            Pending p = frontier.get(common);
+            p.outputs[p.count - 1] = weight;
+         }
+
+         else {
+            last.finalOutput = weight;
+         }
+
+         previous = word;
+         size++;
+      }
+
+      for (int i = previous.length(); i > 0; i--) {
+         frontier.get(i - 1).target(freeze(frontier.remove(i), register));
+      }
+
+      root = freeze(frontier.get(0), register);
+   }
+
+	/**
+	 * Returns the number of distinct queries.
+	 */
+   public int size() {
+      return size;
+   }
+
+	/**
+	 * Returns the number of states in the transducer.
+	 */
+   public int states() {
+      return nodes;
+   }
+
+	/**
+	 * Returns the weight of the given query, or -1 if it is not in the
+	 * dictionary. This method throws a NullPointerException if query is null.
+	 */
+   public long weight(String query) {
+
+      if (query == null) {
+         throw new NullPointerException();
+      }
+
+      long[] acc = new long[1];
+      int node = walk(query, acc);
+
+      return node < 0 || finals[node] < 0 ? -1 : acc[0] + finals[node];
+   }
+
+	/**
+	 * Returns all terms that start with the given prefix, in descending order of weight.
+	 * This method throws a NullPointerException if prefix is null.
+	 */
+   public Term[] allMatches(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      long[] acc = new long[1];
+      int node = walk(prefix, acc);
+      List<Term> list = new ArrayList<Term>();
+
+      if (node >= 0) {
+         collect(node, new StringBuilder(prefix), acc[0], list);
+      }
+
+      Term[] a = list.toArray(new Term[list.size()]);
+      Arrays.sort(a, Term.byDescendingWeightOrder());
+
+      return a;
+   }
+
+	/**
+	 * Returns the k heaviest terms that start with the given prefix, in descending
+	 * order of weight. Every state knows the heaviest output reachable from it, so
+	 * states are expanded best-first and only those that can still contribute are
+	 * visited. This method throws a NullPointerException if prefix is null, and an
+	 * IllegalArgumentException if k is negative.
+	 */
+   public Term[] topMatches(String prefix, int k) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      long[] acc = new long[1];
+      int node = walk(prefix, acc);
+      List<Term> list = new ArrayList<Term>();
+
+      if (node < 0 || maxes[node] < 0 || k == 0) {
+         return new Term[0];
+      }
+
+      PriorityQueue<Entry> heap = new PriorityQueue<Entry>();
+      long seq = 0;
+      heap.add(new Entry(acc[0] + maxes[node], prefix, seq++, node, acc[0]));
+
+      while (!heap.isEmpty() && list.size() < k) {
+
+         Entry e = heap.poll();
+
+         if (e.node < 0) {
+            list.add(new Term(e.key, e.weight));
+            continue;
+         }
+
+         if (finals[e.node] >= 0) {
+            heap.add(new Entry(e.acc + finals[e.node], e.key, seq++, -1, 0));
+         }
+
+         for (int a = firstArc[e.node]; a < firstArc[e.node + 1]; a++) {
+
+            long acc2 = e.acc + outputs[a];
+            heap.add(new Entry(acc2 + maxes[targets[a]], e.key + labels[a], seq++, targets[a], acc2));
+         }
+      }
+
+      return list.toArray(new Term[list.size()]);
+   }
+
+   /**
+    * Follows s from the start state, adding the outputs passed to acc[0].
+    * Returns the state reached, or -1 if s leaves the transducer.
+    */
+   private int walk(String s, long[] acc) {
+
+      int node = root;
+
+      for (int i = 0; i < s.length() && node >= 0; i++) {
+
+         int a = arc(node, s.charAt(i));
+
+         if (a < 0) {
+            return -1;
+         }
+
+         acc[0] += outputs[a];
+         node = targets[a];
+      }
+
+      return node;
+   }
+
+   /**
+    * Returns the index of the arc leaving node with label c, or -1.
+    */
+   private int arc(int node, char c) {
+
+      int first = firstArc[node];
+      int last = firstArc[node + 1] - 1;
+
+      while (first <= last) {
+
+         int mid = first + (last - first) / 2;
+
+         if (c < labels[mid]) {
+            last = mid - 1;
+         }
+
+         else if (c > labels[mid]) {
+            first = mid + 1;
+         }
+
+         else {
+            return mid;
+         }
+      }
+
+      return -1;
+   }
+
+   private void collect(int node, StringBuilder path, long acc, List<Term> list) {
+
+      if (finals[node] >= 0) {
+         list.add(new Term(path.toString(), acc + finals[node]));
+      }
+
+      int length = path.length();
+
+      for (int a = firstArc[node]; a < firstArc[node + 1]; a++) {
+         path.append(labels[a]);
+         collect(targets[a], path, acc + outputs[a], list);
+         path.setLength(length);
+      }
+   }
+
+   /**
+    * Returns the state equal to p, adding p as a new state if there is
+    * none. Two states are equal when they agree on finality, final output
+    * and every arc, so equal suffixes end up shared.
+    */
+   private int freeze(Pending p, HashMap<String, Integer> register) {
+
+      StringBuilder key = new StringBuilder();
+      key.append(p.isFinal ? p.finalOutput : -1).append(';');
+
+      for (int i = 0; i < p.count; i++) {
+         key.append(p.labels[i]).append(p.targets[i]).append(',').append(p.outputs[i]).append(';');
+      }
+
+      Integer id = register.get(key.toString());
+
+      if (id != null) {
+         return id;
+      }
+
+      if (nodes + 2 > firstArc.length) {
+         firstArc = Arrays.copyOf(firstArc, 2 * firstArc.length);
+         finals = Arrays.copyOf(finals, firstArc.length);
+         maxes = Arrays.copyOf(maxes, firstArc.length);
+      }
+
+      if (arcs + p.count > labels.length) {
+
+         int capacity = Math.max(2 * labels.length, arcs + p.count);
+         labels = Arrays.copyOf(labels, capacity);
+         targets = Arrays.copyOf(targets, capacity);
+         outputs = Arrays.copyOf(outputs, capacity);
+      }
+
+      int n = nodes++;
+      long max = p.isFinal ? p.finalOutput : -1;
+      firstArc[n] = arcs;
+
+      for (int i = 0; i < p.count; i++) {
+         labels[arcs] = p.labels[i];
+         targets[arcs] = p.targets[i];
+         outputs[arcs] = p.outputs[i];
+         max = Math.max(max, p.outputs[i] + maxes[p.targets[i]]);
+         arcs++;
+      }
+
+      firstArc[n + 1] = arcs;
+      finals[n] = p.isFinal ? p.finalOutput : -1;
+      maxes[n] = max;
+      register.put(key.toString(), n);
+
+      return n;
+   }
+
+   private int commonLength(String s1, String s2) {
+
+      int n = Math.min(s1.length(), s2.length());
+      int i = 0;
+
+      while (i < n && s1.charAt(i) == s2.charAt(i)) {
+         i++;
+      }
+
+      return i;
+   }
+
+   /**
+    * A state still on the path of the last query added, whose arcs may
+    * change until it is frozen.
+    */
+   private static class Pending {
+      private char[] labels = new char[2];
+      private int[] targets = new int[2];
+      private long[] outputs = new long[2];
+      private int count;
+      private boolean isFinal;
+      private long finalOutput;
+
+      void add(char label) {
+
+         if (count == labels.length) {
+            labels = Arrays.copyOf(labels, 2 * count);
+            targets = Arrays.copyOf(targets, 2 * count);
+            outputs = Arrays.copyOf(outputs, 2 * count);
+         }
+
+         labels[count] = label;
+         targets[count] = -1;
+         outputs[count] = 0;
+         count++;
+      }
+
+      void target(int node) {
+         targets[count - 1] = node;
+      }
+
+      /**
+       * Adds output to every path through this state.
+       */
+      void prepend(long output) {
+
+         for (int i = 0; i < count; i++) {
+            outputs[i] += output;
+         }
+
+         if (isFinal) {
+            finalOutput += output;
+         }
+      }
+   }
+
+   /**
+    * Search frontier entry: a state reached with output acc, bounded by the
+    * heaviest weight below it, or a finished term if node is -1. Ties on
+    * weight are broken by path so results keep lexicographic order.
+    */
+   private static class Entry implements Comparable<Entry> {
+      private long weight;
+      private String key;
+      private long seq;
+      private int node;
+      private long acc;
+
+      Entry(long weight, String key, long seq, int node, long acc) {
+         this.weight = weight;
+         this.key = key;
+         this.seq = seq;
+         this.node = node;
+         this.acc = acc;
+      }
+
+      @Override
+      public int compareTo(Entry other) {
+
+         if (weight != other.weight) {
+            return Long.compare(other.weight, weight);
+         }
+
+         int cmp = key.compareTo(other.key);
+
+         if (cmp != 0) {
+            return cmp;
+         }
+
+         return Long.compare(seq, other.seq);
+      }
+   }
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+
+/**
+ * Typo-tolerant prefix matching over packed terms.
+ *
+ * <p>The sorted array is walked as an implicit trie: at depth d, a range of
+ * terms that share d characters is split into child ranges by their next
+ * character, each found by binary search. A Levenshtein automaton for the
+ * typed prefix, simulated one DP row per trie level, runs alongside the
+ * walk. A branch is dropped as soon as no cell of its row is within the
+ * edit budget. A whole range is accepted as soon as the typed prefix is
+ * within budget of the shared path. Only branches that can still match are
+ * visited, so the cost depends on the prefix and the budget, not on the size
+ * of the dictionary.
+ */
+public class FuzzyPrefix {
+
+   /**
+    * Largest supported edit distance.
+    */
+   public static final int MAX_EDITS = 2;
+
+   private final PackedTerms terms;
+   private final String prefix;
+   private final int maxEdits;
+   private final int[][] rows;
+   private long[] ranges = new long[8];
+   private int count;
+
+   private FuzzyPrefix(PackedTerms terms, String prefix, int maxEdits) {
+      this.terms = terms;
+      this.prefix = prefix;
+      this.maxEdits = maxEdits;
+      this.rows = new int[prefix.length() + maxEdits + 2][prefix.length() + 1];
+   }
+
+    /**
+     * Returns the ranges of terms that start with some string within
+     * maxEdits insertions, deletions or substitutions of prefix, as ranges
+     * packed by BinarySearch.range, in ascending order. This method throws a
+     * NullPointerException if terms or prefix is null, and an
+     * IllegalArgumentException if maxEdits is negative or greater than
+     * MAX_EDITS.
+     */
+   public static long[] ranges(PackedTerms terms, String prefix, int maxEdits) {
+
+      if (terms == null || prefix == null) {
+         throw new NullPointerException();
+      }
+
+      if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+         throw new IllegalArgumentException();
+      }
+
+      FuzzyPrefix walk = new FuzzyPrefix(terms, prefix, maxEdits);
+
+      for (int j = 0; j <= prefix.length(); j++) {
+         walk.rows[0][j] = j;
+      }
+
+      walk.walk(0, terms.size(), 0);
+
+      return Arrays.copyOf(walk.ranges, walk.count);
+   }
+
+    /**
+     * Returns true if query starts with some string within maxEdits edits of
+     * prefix. Used for the few terms that are not in a packed array.
+     */
+   public static boolean matches(String query, String prefix, int maxEdits) {
+
+      int m = prefix.length();
+      int[] prev = new int[m + 1];
+      int[] row = new int[m + 1];
+
+      for (int j = 0; j <= m; j++) {
+         prev[j] = j;
+      }
+
+      if (prev[m] <= maxEdits) {
+         return true;
+      }
+
+      for (int i = 0; i < query.length(); i++) {
+
+         if (!step(prev, row, query.charAt(i), prefix, maxEdits)) {
+            return false;
+         }
+
+         if (row[m] <= maxEdits) {
+            return true;
+         }
+
+         int[] swap = prev;
+         prev = row;
+         row = swap;
+      }
+
+      return false;
+   }
+
+   /**
+    * Visits terms [lo, hi), which share their first depth characters and
+    * whose automaton state is rows[depth].
+    */
+   private void walk(int lo, int hi, int depth) {
+
+      int m = prefix.length();
+
+      if (rows[depth][m] <= maxEdits) {
+         add(lo, hi);
+         return;
+      }
+
+      int i = lo;
+
+      while (i < hi && terms.length(i) == depth) {
+         i++;
+      }
+
+      while (i < hi) {
+
+         char c = terms.charAt(i, depth);
+         int end = groupEnd(i, hi, depth, c);
+
+         if (step(rows[depth], rows[depth + 1], c, prefix, maxEdits)) {
+            walk(i, end, depth + 1);
+         }
+
+         i = end;
+      }
+   }
+
+   /**
+    * Returns the first index in [lo, hi) whose character at depth is
+    * greater than c. Every term in the range is longer than depth.
+    */
+   private int groupEnd(int lo, int hi, int depth, char c) {
+
+      while (lo < hi) {
+
+         int mid = lo + (hi - lo) / 2;
+
+         if (terms.charAt(mid, depth) <= c) {
+            lo = mid + 1;
+         }
+
+         else {
+            hi = mid;
+         }
+      }
+
+      return lo;
+   }
+
+   /**
+    * Computes the automaton row after reading c. Returns false if every
+    * cell is over budget, meaning no extension of the path can match.
+    */
+   private static boolean step(int[] prev, int[] row, char c, String prefix, int maxEdits) {
+
+      row[0] = prev[0] + 1;
+      int min = row[0];
+
+      for (int j = 1; j < row.length; j++) {
+
+         int cost = prefix.charAt(j - 1) == c ? 0 : 1;
+         row[j] = Math.min(Math.min(prev[j] + 1, row[j - 1] + 1), prev[j - 1] + cost);
+         min = Math.min(min, row[j]);
+      }
+
+      return min <= maxEdits;
+   }
+
+   private void add(int lo, int hi) {
+
+      if (count == ranges.length) {
+         ranges = Arrays.copyOf(ranges, 2 * count);
+      }
+
+      ranges[count++] = BinarySearch.range(lo, hi);
+   }
+}
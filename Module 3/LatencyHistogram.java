@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative long values with log-linear
+ * buckets, in the style of HdrHistogram. Values below 128 are counted
+ * exactly; larger values share a bucket with others that agree in their
+ * seven most significant bits, so every reported value is within about
+ * 1.6% of a recorded one. Recording takes constant time and never
+ * allocates.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BITS = 6;
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+   private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong count = new AtomicLong();
+   private final AtomicLong total = new AtomicLong();
+   private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. This method throws an IllegalArgumentException if
+     * value is negative.
+     */
+   public void record(long value) {
+
+      if (value < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      counts.incrementAndGet(bucket(value));
+      count.incrementAndGet();
+      total.addAndGet(value);
+
+      long m = max.get();
+
+      while (value > m && !max.compareAndSet(m, value)) {
+         m = max.get();
+      }
+   }
+
+    /**
+     * Returns the number of recorded values.
+     */
+   public long count() {
+      return count.get();
+   }
+
+    /**
+     * Returns the largest recorded value, or zero if there is none.
+     */
+   public long max() {
+      return max.get();
+   }
+
+    /**
+     * Returns the mean of the recorded values, or zero if there is none.
+     */
+   public double mean() {
+
+      long n = count.get();
+
+      return n == 0 ? 0 : (double) total.get() / n;
+   }
+
+    /**
+     * Returns the smallest value v such that at least the given percentage
+     * of recorded values are no greater than v, to the precision of the
+     * buckets, or zero if there are no values. This method throws an
+     * IllegalArgumentException if percentile is not between 0 and 100.
+     */
+   public long percentile(double percentile) {
+
+      if (percentile < 0 || percentile > 100) {
+         throw new IllegalArgumentException();
+      }
+
+      long n = count.get();
+
+      if (n == 0) {
+         return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+      long seen = 0;
+
+      for (int i = 0; i < BUCKETS; i++) {
+
+         seen += counts.get(i);
+
+         if (seen >= rank) {
+            return Math.min(highest(i), max.get());
+         }
+      }
+
+      return max.get();
+   }
+
+    /**
+     * Discards all recorded values. Values recorded concurrently with this
+     * call may be partly kept.
+     */
+   public void clear() {
+
+      for (int i = 0; i < BUCKETS; i++) {
+         counts.set(i, 0);
+      }
+
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+
+   private static int bucket(long value) {
+
+      if (value < 2 * SUB_COUNT) {
+         return (int) value;
+      }
+
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+      return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+   }
+
+   /**
+    * Returns the largest value that falls in bucket i.
+    */
+   private static long highest(int i) {
+
+      if (i < 2 * SUB_COUNT) {
+         return i;
+      }
+
+      int shift = i / SUB_COUNT - 1;
+      long lowest = (long) (SUB_COUNT + i % SUB_COUNT) << shift;
+
+      return lowest + (1L << shift) - 1;
+   }
+}
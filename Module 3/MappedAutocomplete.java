@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Autocomplete served from a memory-mapped snapshot file.
+ *
+ * <p>The snapshot holds a header (magic, count, byte length), a weights
+ * array, an offsets array and the UTF-8 bytes of every query, sorted by
+ * unsigned byte order. Opening a snapshot maps it read-only and does no
+ * sorting, and the term table stays outside the heap.
+ */
+public class MappedAutocomplete {
+
+   private static final int MAGIC = 0x41435331;
+   private static final int HEADER = 16;
+
+   private final MappedByteBuffer buffer;
+   private final int count;
+   private final int weightsStart;
+   private final int offsetsStart;
+   private final int bytesStart;
+
+   /**
+    * Checks the header, the length and the offsets of a mapped snapshot, in
+    * one pass over the offsets, so that a truncated file or one whose
+    * offsets run backwards or past the query bytes is rejected here rather
+    * than in a later query.
+    */
+   private MappedAutocomplete(MappedByteBuffer buffer) {
+
+      this.buffer = buffer;
+
+      if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+         throw new IllegalArgumentException();
+      }
+
+      count = buffer.getInt(4);
+      int length = buffer.getInt(8);
+
+      if (count < 0 || length < 0
+         || buffer.capacity() < HEADER + 12L * count + 4 + length) {
+         throw new IllegalArgumentException();
+      }
+
+      weightsStart = HEADER;
+      offsetsStart = weightsStart + 8 * count;
+      bytesStart = offsetsStart + 4 * (count + 1);
+
+      if (buffer.getInt(offsetsStart) != 0 || buffer.getInt(offsetsStart + 4 * count) != length) {
+         throw new IllegalArgumentException();
+      }
+
+      int previous = 0;
+
+      for (int i = 1; i < count; i++) {
+
+         int offset = buffer.getInt(offsetsStart + 4 * i);
+
+         if (offset < previous || offset > length) {
+            throw new IllegalArgumentException();
+         }
+
+         previous = offset;
+      }
+   }
+
+    /**
+     * Writes a snapshot of the given autocomplete to fileName. Snapshots
+     * match queries exactly, so a normalised autocomplete cannot be written.
+     * This method throws a NullPointerException if autocomplete is null, and
+     * an IllegalArgumentException if autocomplete is normalised, or if
+     * fileName is null or cannot be written.
+     */
+   public static void write(Autocomplete autocomplete, String fileName) {
+
+      if (autocomplete == null) {
+         throw new NullPointerException();
+      }
+
+      if (fileName == null || autocomplete.normalized()) {
+         throw new IllegalArgumentException();
+      }
+
+      Term[] terms = autocomplete.terms();
+      final byte[][] queries = new byte[terms.length][];
+      Integer[] order = new Integer[terms.length];
+      long length = 0;
+
+      for (int i = 0; i < terms.length; i++) {
+         queries[i] = terms[i].query.getBytes(StandardCharsets.UTF_8);
+         order[i] = i;
+         length += queries[i].length;
+      }
+
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare(Integer i, Integer j) {
+            return Arrays.compareUnsigned(queries[i], queries[j]);
+         }
+      });
+
+      long size = HEADER + 8L * terms.length + 4L * (terms.length + 1) + length;
+
+      if (size > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+         StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+         MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+         out.putInt(MAGIC).putInt(terms.length).putInt((int) length).putInt(0);
+
+         for (int i : order) {
+            out.putLong(terms[i].weight);
+         }
+
+         int offset = 0;
+
+         for (int i : order) {
+            out.putInt(offset);
+            offset += queries[i].length;
+         }
+
+         out.putInt(offset);
+
+         for (int i : order) {
+            out.put(queries[i]);
+         }
+
+         out.force();
+      }
+      catch (IOException e) {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+    /**
+     * Maps the snapshot in fileName. This method throws an
+     * IllegalArgumentException if fileName is null, cannot be opened, or is
+     * not a complete snapshot.
+     */
+   public static MappedAutocomplete open(String fileName) {
+
+      if (fileName == null) {
+         throw new IllegalArgumentException();
+      }
+
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+         return new MappedAutocomplete(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+      catch (IOException e) {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+	/**
+	 * Returns all terms that start with the given prefix, in descending order of weight.
+	 * This method throws a NullPointerException if prefix is null.
+	 */
+   public Term[] allMatches(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+      int first = lowerBound(key, false);
+      int last = lowerBound(key, true);
+      Term[] a = new Term[last - first];
+
+      for (int i = 0; i < a.length; i++) {
+         a[i] = term(first + i);
+      }
+
+      Arrays.sort(a, Term.byDescendingWeightOrder());
+
+      return a;
+   }
+
+    /**
+     * Returns the number of terms in the snapshot.
+     */
+   public int size() {
+      return count;
+   }
+
+   /**
+    * Returns the first index whose query sorts at or after key, or, if past
+    * is true, after every query that starts with key.
+    */
+   private int lowerBound(byte[] key, boolean past) {
+
+      int first = 0;
+      int last = count;
+
+      while (first < last) {
+
+         int mid = first + (last - first) / 2;
+         int cmp = comparePrefix(mid, key);
+
+         if (cmp < 0 || (past && cmp == 0)) {
+            first = mid + 1;
+         }
+
+         else {
+            last = mid;
+         }
+      }
+
+      return first;
+   }
+
+   /**
+    * Compares query i with key using only the first key.length bytes of
+    * the query, in unsigned byte order.
+    */
+   private int comparePrefix(int i, byte[] key) {
+
+      int start = bytesStart + buffer.getInt(offsetsStart + 4 * i);
+      int length = bytesStart + buffer.getInt(offsetsStart + 4 * (i + 1)) - start;
+      int n = Math.min(length, key.length);
+
+      for (int j = 0; j < n; j++) {
+
+         int b1 = buffer.get(start + j) & 0xFF;
+         int b2 = key[j] & 0xFF;
+
+         if (b1 != b2) {
+            return b1 - b2;
+         }
+      }
+
+      return length < key.length ? -1 : 0;
+   }
+
+   private Term term(int i) {
+
+      int start = buffer.getInt(offsetsStart + 4 * i);
+      int end = buffer.getInt(offsetsStart + 4 * (i + 1));
+      byte[] bytes = new byte[end - start];
+      ByteBuffer view = buffer.duplicate();
+      view.position(bytesStart + start);
+      view.get(bytes);
+
+      return new Term(new String(bytes, StandardCharsets.UTF_8), buffer.getLong(weightsStart + 8 * i));
+   }
+}
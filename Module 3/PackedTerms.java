@@ -0,0 +1,362 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted terms stored as parallel primitive arrays: every search key packed
+ * into one char array, an offsets array into it, and a weights array.
+ * Searching touches only these arrays; Term objects are created for results
+ * alone.
+ *
+ * <p>The search key is the query itself, or, for a normalised index, the
+ * QueryKey of the query, with the display queries packed alongside. Terms
+ * are ordered by their sort key: the query, or the search key, a NUL and
+ * the display query.
+ */
+public class PackedTerms {
+
+   private final char[] chars;
+   private final int[] offsets;
+   private final char[] display;
+   private final int[] displayOffsets;
+   private final long[] weights;
+
+    /**
+     * Packs the given terms, which must be in ascending order of query.
+     * If parallel is true, the arrays are filled on all available cores.
+     * This method throws a NullPointerException if terms is null, and an
+     * IllegalArgumentException if the queries hold more than
+     * Integer.MAX_VALUE characters in total.
+     */
+   public PackedTerms(Term[] terms, boolean parallel) {
+      this(terms, null, parallel);
+   }
+
+    /**
+     * Packs the given terms under the given search keys, which must be in
+     * ascending order of sort key. If keys is null, each query is its own
+     * key and no display queries are stored. If parallel is true, the
+     * arrays are filled on all available cores. This method throws a
+     * NullPointerException if terms is null, and an
+     * IllegalArgumentException if the keys or queries hold more than
+     * Integer.MAX_VALUE characters in total.
+     */
+   public PackedTerms(final Term[] terms, final String[] keys, boolean parallel) {
+
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+
+      offsets = new int[terms.length + 1];
+      chars = new char[layout(terms, keys, offsets)];
+
+      if (keys == null) {
+         display = null;
+         displayOffsets = null;
+      }
+
+      else {
+         displayOffsets = new int[terms.length + 1];
+         display = new char[layout(terms, null, displayOffsets)];
+      }
+
+      weights = new long[terms.length];
+
+      IntConsumer pack = new IntConsumer() {
+         public void accept(int i) {
+            String query = terms[i].query;
+
+            if (keys == null) {
+               query.getChars(0, query.length(), chars, offsets[i]);
+            }
+
+            else {
+               keys[i].getChars(0, keys[i].length(), chars, offsets[i]);
+               query.getChars(0, query.length(), display, displayOffsets[i]);
+            }
+         }
+      };
+      IntToLongFunction weight = new IntToLongFunction() {
+         public long applyAsLong(int i) {
+            return terms[i].weight;
+         }
+      };
+
+      if (parallel) {
+         IntStream.range(0, terms.length).parallel().forEach(pack);
+         Arrays.parallelSetAll(weights, weight);
+      }
+
+      else {
+         for (int i = 0; i < terms.length; i++) {
+            pack.accept(i);
+            weights[i] = weight.applyAsLong(i);
+         }
+      }
+   }
+
+    /**
+     * Shares the arrays of base, for a view that overrides the comparisons.
+     */
+   PackedTerms(PackedTerms base) {
+
+      chars = base.chars;
+      offsets = base.offsets;
+      display = base.display;
+      displayOffsets = base.displayOffsets;
+      weights = base.weights;
+   }
+
+    /**
+     * Merges base, minus the entries listed in the sorted array hidden, with
+     * the terms in extra, keyed by sort key in ascending order. Runs in time
+     * linear in the size of the result.
+     */
+   PackedTerms(PackedTerms base, int[] hidden, List<Map.Entry<String, Term>> extra) {
+
+      int n = base.size() - hidden.length + extra.size();
+      Term[] added = new Term[extra.size()];
+      String[] keys = base.display == null ? null : new String[extra.size()];
+
+      for (int j = 0; j < added.length; j++) {
+         added[j] = extra.get(j).getValue();
+
+         if (keys != null) {
+            String sortKey = extra.get(j).getKey();
+            keys[j] = sortKey.substring(0, sortKey.indexOf('\0'));
+         }
+      }
+
+      int[] addedOffsets = new int[added.length + 1];
+      long total = (long) base.chars.length + layout(added, keys, addedOffsets);
+
+      for (int h : hidden) {
+         total -= base.length(h);
+      }
+
+      if (total > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+
+      chars = new char[(int) total];
+      offsets = new int[n + 1];
+      weights = new long[n];
+
+      if (base.display == null) {
+         display = null;
+         displayOffsets = null;
+      }
+
+      else {
+         long totalDisplay = (long) base.display.length + layout(added, null, addedOffsets);
+
+         for (int h : hidden) {
+            totalDisplay -= base.displayOffsets[h + 1] - base.displayOffsets[h];
+         }
+
+         if (totalDisplay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+         }
+
+         display = new char[(int) totalDisplay];
+         displayOffsets = new int[n + 1];
+      }
+
+      int m = 0;
+      int h = 0;
+      int j = 0;
+
+      for (int i = 0; i < base.size(); i++) {
+
+         if (h < hidden.length && hidden[h] == i) {
+            h++;
+            continue;
+         }
+
+         while (j < added.length && base.compareTo(i, extra.get(j).getKey()) > 0) {
+            append(m++, keys == null ? added[j].query : keys[j], added[j]);
+            j++;
+         }
+
+         int length = base.length(i);
+         System.arraycopy(base.chars, base.offsets[i], chars, offsets[m], length);
+         offsets[m + 1] = offsets[m] + length;
+
+         if (display != null) {
+            int displayLength = base.displayOffsets[i + 1] - base.displayOffsets[i];
+            System.arraycopy(base.display, base.displayOffsets[i], display, displayOffsets[m], displayLength);
+            displayOffsets[m + 1] = displayOffsets[m] + displayLength;
+         }
+
+         weights[m++] = base.weights[i];
+      }
+
+      while (j < added.length) {
+         append(m++, keys == null ? added[j].query : keys[j], added[j]);
+         j++;
+      }
+   }
+
+   /**
+    * Fills offsets for the given keys, or for the queries of terms if keys
+    * is null, and returns the total length.
+    */
+   private static int layout(Term[] terms, String[] keys, int[] offsets) {
+
+      long total = 0;
+
+      for (int i = 0; i < terms.length; i++) {
+         offsets[i] = (int) total;
+         total += keys == null ? terms[i].query.length() : keys[i].length();
+
+         if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+         }
+      }
+
+      offsets[terms.length] = (int) total;
+
+      return (int) total;
+   }
+
+   /**
+    * Appends term t under the given search key as entry m.
+    */
+   private void append(int m, String key, Term t) {
+
+      key.getChars(0, key.length(), chars, offsets[m]);
+      offsets[m + 1] = offsets[m] + key.length();
+
+      if (display != null) {
+         t.query.getChars(0, t.query.length(), display, displayOffsets[m]);
+         displayOffsets[m + 1] = displayOffsets[m] + t.query.length();
+      }
+
+      weights[m] = t.weight;
+   }
+
+    /**
+     * Returns the number of terms.
+     */
+   public int size() {
+      return weights.length;
+   }
+
+    /**
+     * Returns the weight of term i.
+     */
+   public long weight(int i) {
+      return weights[i];
+   }
+
+    /**
+     * Returns true if search keys are normalised and display queries are
+     * stored separately.
+     */
+   public boolean normalized() {
+      return display != null;
+   }
+
+    /**
+     * Returns the query of term i, as it should be displayed.
+     */
+   public String query(int i) {
+
+      if (display != null) {
+         return new String(display, displayOffsets[i], displayOffsets[i + 1] - displayOffsets[i]);
+      }
+
+      return new String(chars, offsets[i], length(i));
+   }
+
+    /**
+     * Returns term i as a new Term.
+     */
+   public Term term(int i) {
+      return new Term(query(i), weights[i]);
+   }
+
+    /**
+     * Returns the length of the search key of term i.
+     */
+   public int length(int i) {
+      return offsets[i + 1] - offsets[i];
+   }
+
+    /**
+     * Returns character j of the search key of term i.
+     */
+   public char charAt(int i, int j) {
+      return chars[offsets[i] + j];
+   }
+
+   /**
+    * Returns the weights array, for building a WeightIndex over it.
+    */
+   long[] weights() {
+      return weights;
+   }
+
+    /**
+     * Compares the search key of term i with prefix using only the first
+     * prefix.length() characters of the key. Returns zero if the key starts
+     * with prefix.
+     */
+   public int comparePrefix(int i, String prefix) {
+
+      int start = offsets[i];
+      int length = offsets[i + 1] - start;
+      int n = Math.min(length, prefix.length());
+
+      for (int j = 0; j < n; j++) {
+
+         char c1 = chars[start + j];
+         char c2 = prefix.charAt(j);
+
+         if (c1 != c2) {
+            return c1 - c2;
+         }
+      }
+
+      return length < prefix.length() ? -1 : 0;
+   }
+
+    /**
+     * Compares the sort key of term i with sortKey in ascending lexicographic
+     * order.
+     */
+   public int compareTo(int i, String sortKey) {
+
+      int length = length(i);
+      int total = display == null ? length : length + 1 + displayOffsets[i + 1] - displayOffsets[i];
+      int n = Math.min(total, sortKey.length());
+
+      for (int j = 0; j < n; j++) {
+
+         char c1;
+
+         if (j < length) {
+            c1 = chars[offsets[i] + j];
+         }
+
+         else if (j == length) {
+            c1 = '\0';
+         }
+
+         else {
+            c1 = display[displayOffsets[i] + j - length - 1];
+         }
+
+         char c2 = sortKey.charAt(j);
+
+         if (c1 != c2) {
+            return c1 - c2;
+         }
+      }
+
+      return total - sortKey.length();
+   }
+}
@@ -0,0 +1,45 @@
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalised search keys for case- and accent-insensitive lookups.
+ */
+public class QueryKey {
+
+    /**
+     * Returns query case-folded and stripped of accents, so that "Paris"
+     * and "paris", accented or not, share one key. This method throws a
+     * NullPointerException if query is null.
+     */
+   public static String of(String query) {
+
+      if (query == null) {
+         throw new NullPointerException();
+      }
+
+      boolean plain = true;
+
+      for (int i = 0; i < query.length() && plain; i++) {
+         char c = query.charAt(i);
+         plain = c < 0x80 && !(c >= 'A' && c <= 'Z');
+      }
+
+      if (plain) {
+         return query;
+      }
+
+      String decomposed = Normalizer.normalize(query, Normalizer.Form.NFD);
+      StringBuilder key = new StringBuilder(decomposed.length());
+
+      for (int i = 0; i < decomposed.length(); i++) {
+
+         char c = decomposed.charAt(i);
+
+         if (Character.getType(c) != Character.NON_SPACING_MARK) {
+            key.append(c);
+         }
+      }
+
+      return key.toString().toLowerCase(Locale.ROOT);
+   }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AutocompleteMetrics that keeps, for each operation, histograms of latency
+ * in nanoseconds, result sizes, comparisons and allocated bytes,
+ * along with the slowest prefixes seen so far.
+ */
+public class RecordingMetrics implements AutocompleteMetrics {
+
+   private final ConcurrentHashMap<String, Histograms> operations =
+      new ConcurrentHashMap<String, Histograms>();
+   private final PriorityQueue<Slow> slowest = new PriorityQueue<Slow>();
+   private final int keep;
+
+    /**
+     * Creates metrics that remember the keep slowest calls. This method
+     * throws an IllegalArgumentException if keep is negative.
+     */
+   public RecordingMetrics(int keep) {
+
+      if (keep < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      this.keep = keep;
+   }
+
+   @Override
+   public void record(String operation, String prefix, int matches, long nanos,
+         long comparisons, long allocatedBytes) {
+
+      Histograms h = histograms(operation);
+      h.latency.record(Math.max(0, nanos));
+      h.matches.record(matches);
+      h.comparisons.record(comparisons);
+
+      if (allocatedBytes >= 0) {
+         h.allocation.record(allocatedBytes);
+      }
+
+      if (keep > 0) {
+
+         synchronized (slowest) {
+
+            if (slowest.size() < keep || nanos > slowest.peek().nanos) {
+               slowest.add(new Slow(operation, prefix, nanos));
+
+               if (slowest.size() > keep) {
+                  slowest.poll();
+               }
+            }
+         }
+      }
+   }
+
+    /**
+     * Returns the latency histogram, in nanoseconds, of the named operation.
+     */
+   public LatencyHistogram latency(String operation) {
+      return histograms(operation).latency;
+   }
+
+    /**
+     * Returns the histogram of result sizes of the named operation.
+     */
+   public LatencyHistogram matches(String operation) {
+      return histograms(operation).matches;
+   }
+
+    /**
+     * Returns the histogram of comparisons per call of the named operation,
+     * counted as described in AutocompleteMetrics.record.
+     */
+   public LatencyHistogram comparisons(String operation) {
+      return histograms(operation).comparisons;
+   }
+
+    /**
+     * Returns the histogram of bytes allocated per call of the named
+     * operation. It stays empty if the JVM cannot measure allocation.
+     */
+   public LatencyHistogram allocation(String operation) {
+      return histograms(operation).allocation;
+   }
+
+    /**
+     * Returns the slowest calls recorded so far, slowest first, each as
+     * "operation prefix nanos".
+     */
+   public List<String> slowest() {
+
+      List<Slow> list;
+
+      synchronized (slowest) {
+         list = new ArrayList<Slow>(slowest);
+      }
+
+      Collections.sort(list, Collections.reverseOrder());
+      List<String> result = new ArrayList<String>();
+
+      for (Slow s : list) {
+         result.add(s.toString());
+      }
+
+      return result;
+   }
+
+   private Histograms histograms(String operation) {
+
+      Histograms h = operations.get(operation);
+
+      if (h == null) {
+         operations.putIfAbsent(operation, new Histograms());
+         h = operations.get(operation);
+      }
+
+      return h;
+   }
+
+   /**
+    * The histograms of one operation.
+    */
+   private static class Histograms {
+      private final LatencyHistogram latency = new LatencyHistogram();
+      private final LatencyHistogram matches = new LatencyHistogram();
+      private final LatencyHistogram comparisons = new LatencyHistogram();
+      private final LatencyHistogram allocation = new LatencyHistogram();
+   }
+
+   /**
+    * One slow call, ordered by latency.
+    */
+   private static class Slow implements Comparable<Slow> {
+      private final String operation;
+      private final String prefix;
+      private final long nanos;
+
+      Slow(String operation, String prefix, long nanos) {
+         this.operation = operation;
+         this.prefix = prefix;
+         this.nanos = nanos;
+      }
+
+      @Override
+      public int compareTo(Slow other) {
+         return Long.compare(nanos, other.nanos);
+      }
+
+      @Override
+      public String toString() {
+         return operation + " " + prefix + " " + nanos;
+      }
+   }
+}
@@ -0,0 +1,217 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of autocomplete results keyed by (prefix, k).
+ *
+ * <p>Each entry remembers the generation of the index it was computed from,
+ * a number that changes whenever an index is published. A lookup under any
+ * other generation is a miss, so updates and reloads never serve stale
+ * results and need no explicit invalidation. Entries hold only the number,
+ * never the index, so an old index can be collected as soon as queries stop
+ * using it.
+ *
+ * <p>The cache is split into stripes by key hash, each an LRU map with its
+ * own lock, so concurrent queries for different prefixes rarely wait on one
+ * another. Recency is tracked per stripe, which makes eviction approximate
+ * LRU over the whole cache; small caches have a single stripe and exact
+ * LRU. Queries with the cache turned off take no lock.
+ */
+public class ResultCache {
+
+   private static final int MAX_STRIPES = 16;
+   private static final int MIN_STRIPE_CAPACITY = 64;
+
+   private final int capacity;
+   private final Stripe[] stripes;
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most capacity results. This method throws
+     * an IllegalArgumentException if capacity is less than one.
+     */
+   public ResultCache(int capacity) {
+
+      if (capacity < 1) {
+         throw new IllegalArgumentException();
+      }
+
+      this.capacity = capacity;
+      int n = Integer.highestOneBit(Math.max(1, Math.min(capacity / MIN_STRIPE_CAPACITY, MAX_STRIPES)));
+      stripes = new Stripe[n];
+
+      for (int i = 0; i < n; i++) {
+         stripes[i] = new Stripe(capacity / n + (i < capacity % n ? 1 : 0));
+      }
+   }
+
+    /**
+     * Returns a copy of the cached result for (prefix, k) computed from the
+     * given index generation, or null on a miss.
+     */
+   Term[] get(String prefix, int k, long generation) {
+
+      Key key = new Key(prefix, k);
+      Stripe s = stripe(key);
+      Entry e;
+
+      synchronized (s) {
+
+         e = s.map.get(key);
+
+         if (e != null && e.generation != generation) {
+            s.map.remove(key);
+            e = null;
+         }
+      }
+
+      if (e == null) {
+         misses.incrementAndGet();
+         return null;
+      }
+
+      hits.incrementAndGet();
+      return e.result.clone();
+   }
+
+    /**
+     * Stores a copy of result for (prefix, k) computed from the given index
+     * generation.
+     */
+   void put(String prefix, int k, long generation, Term[] result) {
+
+      Key key = new Key(prefix, k);
+      Entry e = new Entry(generation, result.clone());
+      Stripe s = stripe(key);
+
+      synchronized (s) {
+         s.put(key, e);
+      }
+   }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     */
+   public long hits() {
+      return hits.get();
+   }
+
+    /**
+     * Returns the number of lookups that had to be computed.
+     */
+   public long misses() {
+      return misses.get();
+   }
+
+    /**
+     * Returns the number of cached results.
+     */
+   public int size() {
+
+      int size = 0;
+
+      for (Stripe s : stripes) {
+
+         synchronized (s) {
+            size += s.map.size();
+         }
+      }
+
+      return size;
+   }
+
+    /**
+     * Returns the maximum number of cached results.
+     */
+   public int capacity() {
+      return capacity;
+   }
+
+    /**
+     * Removes every cached result and resets the counters.
+     */
+   public void clear() {
+
+      for (Stripe s : stripes) {
+
+         synchronized (s) {
+            s.map.clear();
+         }
+      }
+
+      hits.set(0);
+      misses.set(0);
+   }
+
+   private Stripe stripe(Key key) {
+
+      int h = key.hashCode();
+
+      return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+   }
+
+   /**
+    * One access-ordered LRU map, guarded by the stripe's own monitor.
+    */
+   private static final class Stripe {
+      private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+      private final int capacity;
+
+      Stripe(int capacity) {
+         this.capacity = capacity;
+      }
+
+      /**
+       * Stores e under key, evicting the least recently used entry if the
+       * stripe is full.
+       */
+      void put(Key key, Entry e) {
+
+         map.put(key, e);
+
+         if (map.size() > capacity) {
+            Iterator<Key> eldest = map.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+         }
+      }
+   }
+
+   private static final class Key {
+      private final String prefix;
+      private final int k;
+
+      Key(String prefix, int k) {
+         this.prefix = prefix;
+         this.k = k;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+
+         if (!(o instanceof Key)) {
+            return false;
+         }
+
+         Key other = (Key) o;
+         return k == other.k && prefix.equals(other.prefix);
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * prefix.hashCode() + k;
+      }
+   }
+
+   private static final class Entry {
+      private final long generation;
+      private final Term[] result;
+
+      Entry(long generation, Term[] result) {
+         this.generation = generation;
+         this.result = result;
+      }
+   }
+}
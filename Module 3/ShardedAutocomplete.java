@@ -0,0 +1,219 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Autocomplete spread over several independent Autocomplete shards.
+ *
+ * <p>Terms are assigned to shards by the hash of their query, so every shard
+ * holds a slice of every prefix range. A query fans out to all shards in
+ * parallel and the per-shard results, each already in descending order of
+ * weight, are k-way merged. Results are the same as a single Autocomplete
+ * over all the terms would return.
+ */
+public class ShardedAutocomplete {
+
+   private final Autocomplete[] shards;
+   private final ForkJoinPool pool;
+
+	/**
+	 * Initializes the given number of shards from the given array of terms,
+	 * building them in parallel on the common pool. This method throws a
+	 * NullPointerException if terms is null, and an IllegalArgumentException
+	 * if shardCount is less than one.
+	 */
+   public ShardedAutocomplete(Term[] terms, int shardCount) {
+      this(terms, shardCount, ForkJoinPool.commonPool());
+   }
+
+	/**
+	 * Initializes the given number of shards from the given array of terms,
+	 * running builds and queries on pool. This method throws a
+	 * NullPointerException if terms or pool is null, and an
+	 * IllegalArgumentException if shardCount is less than one.
+	 */
+   public ShardedAutocomplete(Term[] terms, int shardCount, ForkJoinPool pool) {
+
+      if (terms == null || pool == null) {
+         throw new NullPointerException();
+      }
+
+      if (shardCount < 1) {
+         throw new IllegalArgumentException();
+      }
+
+      this.pool = pool;
+      this.shards = new Autocomplete[shardCount];
+
+      List<List<Term>> slices = new ArrayList<List<Term>>();
+
+      for (int s = 0; s < shardCount; s++) {
+         slices.add(new ArrayList<Term>(terms.length / shardCount + 1));
+      }
+
+      for (Term t : terms) {
+
+         if (t == null) {
+            throw new NullPointerException();
+         }
+
+         slices.get(shardOf(t.query)).add(t);
+      }
+
+      List<CompletableFuture<Autocomplete>> builds = new ArrayList<CompletableFuture<Autocomplete>>();
+
+      for (final List<Term> slice : slices) {
+         builds.add(CompletableFuture.supplyAsync(new Supplier<Autocomplete>() {
+            public Autocomplete get() {
+               return new Autocomplete(slice.toArray(new Term[slice.size()]));
+            }
+         }, pool));
+      }
+
+      for (int s = 0; s < shardCount; s++) {
+         shards[s] = builds.get(s).join();
+      }
+   }
+
+	/** 
+	 * Returns all terms that start with the given prefix, in descending order of weight. 
+	 * This method throws a NullPointerException if prefix is null.
+	 */
+   public Term[] allMatches(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      return fanOut(prefix, -1);
+   }
+
+	/** 
+	 * Returns the k heaviest terms that start with the given prefix, in descending
+	 * order of weight. Each shard returns its own k heaviest and the results are
+	 * merged. This method throws a NullPointerException if prefix is null, and
+	 * an IllegalArgumentException if k is negative.
+	 */
+   public Term[] topMatches(String prefix, int k) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      return fanOut(prefix, k);
+   }
+
+	/**
+	 * Changes the weight of every term with the given query, in the shard that
+	 * holds it. This method throws a NullPointerException if query is null,
+	 * and an IllegalArgumentException if newWeight is negative or no term has
+	 * the given query.
+	 */
+   public void updateWeight(String query, long newWeight) {
+
+      if (query == null) {
+         throw new NullPointerException();
+      }
+
+      shards[shardOf(query)].updateWeight(query, newWeight);
+   }
+
+	/**
+	 * Adds the given term to the shard its query belongs to. This method
+	 * throws a NullPointerException if term is null.
+	 */
+   public void addTerm(Term term) {
+
+      if (term == null) {
+         throw new NullPointerException();
+      }
+
+      shards[shardOf(term.query)].addTerm(term);
+   }
+
+   /**
+    * Queries every shard in parallel, for all matches if k is negative, and
+    * merges the results.
+    */
+   private Term[] fanOut(final String prefix, final int k) {
+
+      List<CompletableFuture<Term[]>> calls = new ArrayList<CompletableFuture<Term[]>>();
+
+      for (final Autocomplete shard : shards) {
+         calls.add(CompletableFuture.supplyAsync(new Supplier<Term[]>() {
+            public Term[] get() {
+               return k < 0 ? shard.allMatches(prefix) : shard.topMatches(prefix, k);
+            }
+         }, pool));
+      }
+
+      Term[][] results = new Term[shards.length][];
+      long total = 0;
+
+      for (int s = 0; s < shards.length; s++) {
+         results[s] = calls.get(s).join();
+         total += results[s].length;
+      }
+
+      return merge(results, k < 0 ? total : Math.min(k, total));
+   }
+
+   /**
+    * Merges per-shard results, each in descending order of weight, keeping
+    * the first n. Equal weights come out in ascending order of query, as
+    * they would from a single index.
+    */
+   private static Term[] merge(final Term[][] results, long n) {
+
+      if (results.length == 1) {
+         return results[0];
+      }
+
+      PriorityQueue<int[]> heap = new PriorityQueue<int[]>(results.length, new Comparator<int[]>() {
+         public int compare(int[] c1, int[] c2) {
+
+            Term t1 = results[c1[0]][c1[1]];
+            Term t2 = results[c2[0]][c2[1]];
+
+            if (t1.weight != t2.weight) {
+               return Long.compare(t2.weight, t1.weight);
+            }
+
+            return t1.compareTo(t2);
+         }
+      });
+
+      for (int s = 0; s < results.length; s++) {
+
+         if (results[s].length > 0) {
+            heap.add(new int[] {s, 0});
+         }
+      }
+
+      Term[] a = new Term[(int) n];
+
+      for (int i = 0; i < a.length; i++) {
+
+         int[] cursor = heap.poll();
+         a[i] = results[cursor[0]][cursor[1]++];
+
+         if (cursor[1] < results[cursor[0]].length) {
+            heap.add(cursor);
+         }
+      }
+
+      return a;
+   }
+
+   private int shardOf(String query) {
+      return Math.floorMod(query.hashCode(), shards.length);
+   }
+}
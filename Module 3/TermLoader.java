@@ -0,0 +1,122 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Streaming loader for term dictionaries.
+ */
+public class TermLoader {
+
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final int INITIAL_CAPACITY = 1024;
+   private static final int MIN_LINE_BYTES = 2;
+
+    /**
+     * Reads a dictionary of "weight TAB query" lines and returns an
+     * Autocomplete over it. A first line holding only the number of terms
+     * is used as a hint to size the array up front, capped by the most
+     * terms the file could hold. Terms are read straight into the
+     * array the Autocomplete keeps, and the sort is skipped when the file is
+     * already in ascending order of query. This method throws an
+     * IllegalArgumentException if fileName is null, cannot be opened or
+     * contains a malformed line, including a count too large for an int.
+     */
+   public static Autocomplete load(String fileName) {
+      return load(fileName, false);
+   }
+
+    /**
+     * Reads a dictionary as load(fileName) does. If parallel is true, an
+     * unsorted file is sorted and indexed on all available cores.
+     */
+   public static Autocomplete load(String fileName, boolean parallel) {
+
+      if (fileName == null) {
+         throw new IllegalArgumentException();
+      }
+
+      Path path = Paths.get(fileName);
+
+      try (BufferedReader in = new BufferedReader(Files.newBufferedReader(
+         path, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+         Term[] terms = new Term[INITIAL_CAPACITY];
+         int n = 0;
+         boolean sorted = true;
+         String line = in.readLine();
+
+         if (line != null && line.trim().matches("\\d+")) {
+            terms = new Term[capacity(line, Files.size(path))];
+            line = in.readLine();
+         }
+
+         while (line != null) {
+
+            if (line.trim().length() > 0) {
+
+               Term t = parse(line);
+
+               if (n == terms.length) {
+                  terms = Arrays.copyOf(terms, Math.max(INITIAL_CAPACITY, 2 * n));
+               }
+
+               if (n > 0 && terms[n - 1].compareTo(t) > 0) {
+                  sorted = false;
+               }
+
+               terms[n++] = t;
+            }
+
+            line = in.readLine();
+         }
+
+         if (n < terms.length) {
+            terms = Arrays.copyOf(terms, n);
+         }
+
+         return Autocomplete.adopt(terms, sorted, parallel);
+      }
+      catch (IOException e) {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+   /**
+    * Returns the count on a header line, capped by the number of terms a
+    * file of the given size can hold, since every term line takes at least
+    * a weight digit and a tab.
+    */
+   private static int capacity(String line, long fileSize) {
+
+      int count;
+
+      try {
+         count = Integer.parseInt(line.trim());
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException(line);
+      }
+
+      return (int) Math.min(count, fileSize / MIN_LINE_BYTES);
+   }
+
+   private static Term parse(String line) {
+
+      int tab = line.indexOf('\t');
+
+      if (tab < 0) {
+         throw new IllegalArgumentException(line);
+      }
+
+      try {
+         return new Term(line.substring(tab + 1), Long.parseLong(line.substring(0, tab).trim()));
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException(line);
+      }
+   }
+}
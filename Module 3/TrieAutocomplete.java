@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Autocomplete backed by a compressed trie over term queries.
+ * Answers the same queries as Autocomplete, in the same order.
+ */
+public class TrieAutocomplete {
+
+   private Node root;
+
+	/**
+	 * Initializes a compressed trie from the given array of terms.
+	 * This method throws a NullPointerException if terms is null.
+	 */
+   public TrieAutocomplete(Term[] terms) {
+
+      if (terms == null) {
+         throw new NullPointerException();
+      }
+
+      Term[] sorted = Arrays.copyOf(terms, terms.length);
+      Arrays.sort(sorted);
+
+      root = new Node("");
+
+      for (Term t : sorted) {
+         insert(t);
+      }
+   }
+
+	/**
+	 * Returns all terms that start with the given prefix, in descending order of weight.
+	 * This method throws a NullPointerException if prefix is null.
+	 */
+   public Term[] allMatches(String prefix) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      Node node = find(prefix, null);
+      List<Term> list = new ArrayList<Term>();
+
+      if (node != null) {
+         collect(node, list);
+      }
+
+      Term[] a = list.toArray(new Term[list.size()]);
+      Arrays.sort(a, Term.byDescendingWeightOrder());
+
+      return a;
+   }
+
+	/**
+	 * Returns the k heaviest terms that start with the given prefix, in descending
+	 * order of weight. Branches are expanded best-first on their cached maximum
+	 * weight, so only subtrees that can still contribute are visited. This method
+	 * throws a NullPointerException if prefix is null, and an
+	 * IllegalArgumentException if k is negative.
+	 */
+   public Term[] topMatches(String prefix, int k) {
+
+      if (prefix == null) {
+         throw new NullPointerException();
+      }
+
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      List<Term> list = new ArrayList<Term>();
+      StringBuilder path = new StringBuilder();
+      Node node = find(prefix, path);
+
+      if (node == null || k == 0) {
+         return new Term[0];
+      }
+
+      PriorityQueue<Entry> heap = new PriorityQueue<Entry>();
+      long seq = 0;
+      heap.add(new Entry(node.max, path.toString(), seq++, node, null));
+
+      while (!heap.isEmpty() && list.size() < k) {
+
+         Entry e = heap.poll();
+
+         if (e.term != null) {
+            list.add(e.term);
+            continue;
+         }
+
+         for (Term t : e.node.terms) {
+            heap.add(new Entry(t.weight, t.query, seq++, null, t));
+         }
+
+         for (Node child : e.node.children) {
+            heap.add(new Entry(child.max, e.key + child.label, seq++, child, null));
+         }
+      }
+
+      return list.toArray(new Term[list.size()]);
+   }
+
+   private void insert(Term t) {
+
+      Node node = root;
+      String rest = t.query;
+      node.max = Math.max(node.max, t.weight);
+
+      while (rest.length() > 0) {
+
+         int i = childIndex(node, rest.charAt(0));
+
+         if (i < 0) {
+            Node leaf = new Node(rest);
+            leaf.max = t.weight;
+            node.addChild(-i - 1, leaf);
+            node = leaf;
+            rest = "";
+            break;
+         }
+
+         Node child = node.children.get(i);
+         int common = commonLength(child.label, rest);
+
+         if (common < child.label.length()) {
+            Node split = new Node(child.label.substring(0, common));
+            split.max = child.max;
+            child.label = child.label.substring(common);
+            split.addChild(0, child);
+            node.children.set(i, split);
+            child = split;
+         }
+
+         child.max = Math.max(child.max, t.weight);
+         node = child;
+         rest = rest.substring(common);
+      }
+
+      node.addTerm(t);
+   }
+
+   /**
+    * Returns the highest node whose path starts with prefix, or null.
+    * If path is not null, the full path of that node is appended to it.
+    */
+   private Node find(String prefix, StringBuilder path) {
+
+      Node node = root;
+      int depth = 0;
+
+      while (depth < prefix.length()) {
+
+         int i = childIndex(node, prefix.charAt(depth));
+
+         if (i < 0) {
+            return null;
+         }
+
+         Node child = node.children.get(i);
+         int n = Math.min(child.label.length(), prefix.length() - depth);
+
+         if (!child.label.regionMatches(0, prefix, depth, n)) {
+            return null;
+         }
+
+         if (path != null) {
+            path.append(child.label);
+         }
+
+         node = child;
+         depth += child.label.length();
+      }
+
+      return node;
+   }
+
+   private void collect(Node node, List<Term> list) {
+
+      list.addAll(node.terms);
+
+      for (Node child : node.children) {
+         collect(child, list);
+      }
+   }
+
+   private int childIndex(Node node, char c) {
+
+      int first = 0;
+      int last = node.children.size() - 1;
+
+      while (first <= last) {
+
+         int mid = first + (last - first) / 2;
+         char m = node.children.get(mid).label.charAt(0);
+
+         if (c < m) {
+            last = mid - 1;
+         }
+
+         else if (c > m) {
+            first = mid + 1;
+         }
+
+         else {
+            return mid;
+         }
+      }
+
+      return -first - 1;
+   }
+
+   private int commonLength(String s1, String s2) {
+
+      int n = Math.min(s1.length(), s2.length());
+      int i = 0;
+
+      while (i < n && s1.charAt(i) == s2.charAt(i)) {
+         i++;
+      }
+
+      return i;
+   }
+
+   /**
+    * Trie node holding an edge label, the terms that end here and the
+    * maximum weight found in its subtree. Both lists start out as the
+    * shared empty list and get their own storage on the first add, since
+    * most nodes have no terms or no children.
+    */
+   private static class Node {
+      private String label;
+      private long max;
+      private List<Term> terms = Collections.emptyList();
+      private List<Node> children = Collections.emptyList();
+
+      Node(String label) {
+         this.label = label;
+      }
+
+      void addTerm(Term t) {
+
+         if (terms.isEmpty()) {
+            terms = new ArrayList<Term>(1);
+         }
+
+         terms.add(t);
+      }
+
+      void addChild(int i, Node child) {
+
+         if (children.isEmpty()) {
+            children = new ArrayList<Node>(2);
+         }
+
+         children.add(i, child);
+      }
+   }
+
+   /**
+    * Search frontier entry: either a whole subtree or a single term.
+    * Ties on weight are broken by path so results keep lexicographic order.
+    */
+   private static class Entry implements Comparable<Entry> {
+      private long weight;
+      private String key;
+      private long seq;
+      private Node node;
+      private Term term;
+
+      Entry(long weight, String key, long seq, Node node, Term term) {
+         this.weight = weight;
+         this.key = key;
+         this.seq = seq;
+         this.node = node;
+         this.term = term;
+      }
+
+      @Override
+      public int compareTo(Entry other) {
+
+         if (weight != other.weight) {
+            return Long.compare(other.weight, weight);
+         }
+
+         int cmp = key.compareTo(other.key);
+
+         if (cmp != 0) {
+            return cmp;
+         }
+
+         return Long.compare(seq, other.seq);
+      }
+   }
+}
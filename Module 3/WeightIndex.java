@@ -0,0 +1,260 @@
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Range-max index over the weights of a sorted term array.
+ */
+public class WeightIndex {
+
+   private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+   private long[] weights;
+   private int[] tree;
+   private int size;
+   private long[] comparisons;
+
+    /**
+     * Builds a segment tree whose nodes hold the index of the heaviest
+     * weight in their range. This method throws a NullPointerException
+     * if weights is null.
+     */
+   public WeightIndex(long[] weights) {
+      this(weights, false);
+   }
+
+    /**
+     * Builds the segment tree, filling each level with a parallel stream
+     * when parallel is true and the level is large enough to pay for it.
+     * This method throws a NullPointerException if weights is null.
+     */
+   public WeightIndex(long[] weights, boolean parallel) {
+
+      if (weights == null) {
+         throw new NullPointerException();
+      }
+
+      this.weights = weights;
+      size = 1;
+
+      while (size < weights.length) {
+         size *= 2;
+      }
+
+      tree = new int[2 * size];
+      final int n = weights.length;
+
+      fill(size, 2 * size, parallel, new IntConsumer() {
+         public void accept(int i) {
+            tree[i] = i - size < n ? i - size : -1;
+         }
+      });
+
+      for (int level = size / 2; level > 0; level /= 2) {
+         fill(level, 2 * level, parallel, new IntConsumer() {
+            public void accept(int i) {
+               tree[i] = heavier(tree[2 * i], tree[2 * i + 1]);
+            }
+         });
+      }
+   }
+
+    /**
+     * Shares the tree of base, adding every heap comparison made by top and
+     * descending to comparisons[0]. Used to measure queries; base itself
+     * never counts.
+     */
+   WeightIndex(WeightIndex base, long[] comparisons) {
+
+      this.weights = base.weights;
+      this.tree = base.tree;
+      this.size = base.size;
+      this.comparisons = comparisons;
+   }
+
+   private static void fill(int from, int to, boolean parallel, IntConsumer action) {
+
+      if (parallel && to - from >= PARALLEL_THRESHOLD) {
+         IntStream.range(from, to).parallel().forEach(action);
+      }
+
+      else {
+         for (int i = from; i < to; i++) {
+            action.accept(i);
+         }
+      }
+   }
+
+    /**
+     * Returns the index of the heaviest weight in [lo, hi), or -1 if the
+     * range is empty. Ties go to the lower index.
+     */
+   public int maxIndex(int lo, int hi) {
+
+      int best = -1;
+
+      for (lo += size, hi += size; lo < hi; lo /= 2, hi /= 2) {
+
+         if ((lo & 1) == 1) {
+            best = heavier(best, tree[lo++]);
+         }
+
+         if ((hi & 1) == 1) {
+            best = heavier(best, tree[--hi]);
+         }
+      }
+
+      return best;
+   }
+
+    /**
+     * Returns the indices of the k heaviest weights in [lo, hi), in
+     * descending order of weight. Equal weights keep their index order,
+     * which matches a stable sort of the range. This method throws an
+     * IllegalArgumentException if k is negative.
+     */
+   public int[] top(int lo, int hi, int k) {
+      return top(new long[] {BinarySearch.range(lo, hi)}, k);
+   }
+
+    /**
+     * Returns the indices of the k heaviest weights across the given ranges,
+     * each packed by BinarySearch.range, in descending order of weight.
+     * The ranges must not overlap. Equal weights keep their index order.
+     * This method throws an IllegalArgumentException if k is negative.
+     */
+   public int[] top(long[] ranges, int k) {
+
+      if (k < 0) {
+         throw new IllegalArgumentException();
+      }
+
+      Descending it = new Descending(ranges);
+      int[] result = new int[(int) Math.min(k, it.remaining)];
+
+      for (int i = 0; i < result.length; i++) {
+         result[i] = it.nextInt();
+      }
+
+      return result;
+   }
+
+    /**
+     * Returns an iterator over the indices in the given ranges, each packed
+     * by BinarySearch.range, in descending order of weight. The ranges must
+     * not overlap. Equal weights keep their index order. Indices are found
+     * as they are asked for, each at a cost of O(log n), so a caller that
+     * stops early pays only for what it took.
+     */
+   public PrimitiveIterator.OfInt descending(long[] ranges) {
+      return new Descending(ranges);
+   }
+
+   private int heavier(int i, int j) {
+
+      if (i == -1) {
+         return j;
+      }
+
+      if (j == -1) {
+         return i;
+      }
+
+      if (weights[j] > weights[i] || (weights[j] == weights[i] && j < i)) {
+         return j;
+      }
+
+      return i;
+   }
+
+   /**
+    * Best-first walk over sub-ranges: the heap holds disjoint ranges keyed
+    * by their heaviest weight, and taking one splits it around that index.
+    */
+   private class Descending implements PrimitiveIterator.OfInt {
+      private final PriorityQueue<Range> heap;
+      private long remaining;
+
+      Descending(long[] ranges) {
+
+         if (comparisons == null) {
+            heap = new PriorityQueue<Range>();
+         }
+
+         else {
+            heap = new PriorityQueue<Range>(11, new Comparator<Range>() {
+               public int compare(Range r1, Range r2) {
+                  comparisons[0]++;
+                  return r1.compareTo(r2);
+               }
+            });
+         }
+
+         for (long range : ranges) {
+
+            int lo = BinarySearch.first(range);
+            int hi = BinarySearch.last(range);
+
+            if (lo < hi) {
+               heap.add(new Range(lo, hi, maxIndex(lo, hi)));
+               remaining += hi - lo;
+            }
+         }
+      }
+
+      @Override
+      public boolean hasNext() {
+         return !heap.isEmpty();
+      }
+
+      @Override
+      public int nextInt() {
+
+         Range r = heap.poll();
+
+         if (r == null) {
+            throw new NoSuchElementException();
+         }
+
+         if (r.lo < r.max) {
+            heap.add(new Range(r.lo, r.max, maxIndex(r.lo, r.max)));
+         }
+
+         if (r.max + 1 < r.hi) {
+            heap.add(new Range(r.max + 1, r.hi, maxIndex(r.max + 1, r.hi)));
+         }
+
+         remaining--;
+
+         return r.max;
+      }
+   }
+
+   /**
+    * A sub-range of the search together with the index of its heaviest weight.
+    */
+   private class Range implements Comparable<Range> {
+      private int lo;
+      private int hi;
+      private int max;
+
+      Range(int lo, int hi, int max) {
+         this.lo = lo;
+         this.hi = hi;
+         this.max = max;
+      }
+
+      @Override
+      public int compareTo(Range other) {
+
+         if (weights[max] != weights[other.max]) {
+            return Long.compare(weights[other.max], weights[max]);
+         }
+
+         return Integer.compare(max, other.max);
+      }
+   }
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the Module 3 autocomplete stack.
+ *
+ * <p>Dictionaries are synthetic: queries are random words whose letters
+ * follow English frequencies, and weights follow a Zipf distribution over
+ * rank. Lookup prefixes are cut from terms drawn by the same Zipf law, so
+ * popular prefixes are queried most, as in real traffic. Run with the
+ * Module 3 classes and JMH on the classpath; main() adds the GC profiler so
+ * every result reports its allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class AutocompleteBenchmark {
+
+   private static final String LETTERS = "eeeeeeeeeeeettttttttaaaaaaaaoooooooiiiiiiinnnnnnnsssssshhhhhhrrrrrr"
+      + "ddddllllcccuuummwwffggyyppbbvkjxqz";
+   private static final int PREFIXES = 4096;
+   private static final double ZIPF_EXPONENT = 1.0;
+
+   /**
+    * A synthetic dictionary, shared by every benchmark of a given size.
+    */
+   @State(Scope.Benchmark)
+   public static class Dictionary {
+
+      @Param({"10000", "100000", "1000000", "10000000"})
+      public int size;
+
+      Term[] terms;
+      Term[] sorted;
+      PackedTerms packed;
+      EytzingerIndex eytzinger;
+      Autocomplete autocomplete;
+      double[] cumulative;
+
+      @Setup(Level.Trial)
+      public void setUp() {
+
+         Random random = new Random(42);
+         terms = new Term[size];
+         cumulative = new double[size];
+         double total = 0;
+
+         for (int i = 0; i < size; i++) {
+
+            int length = 3 + random.nextInt(10);
+            char[] word = new char[length];
+
+            for (int j = 0; j < length; j++) {
+               word[j] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+            }
+
+            terms[i] = new Term(new String(word), (long) (1e9 / Math.pow(i + 1, ZIPF_EXPONENT)));
+            total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = total;
+         }
+
+         autocomplete = new Autocomplete(terms);
+         sorted = terms.clone();
+         Arrays.sort(sorted);
+         packed = new PackedTerms(sorted, false);
+         eytzinger = new EytzingerIndex(packed);
+      }
+
+      /**
+       * Returns a term drawn with probability proportional to its weight.
+       */
+      Term draw(Random random) {
+
+         double target = random.nextDouble() * cumulative[size - 1];
+         int rank = Arrays.binarySearch(cumulative, target);
+
+         return terms[rank < 0 ? Math.min(-rank - 1, size - 1) : rank];
+      }
+   }
+
+   /**
+    * Lookup prefixes of one length, cut from Zipf-drawn terms.
+    */
+   @State(Scope.Thread)
+   public static class Lookups {
+
+      @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+      public int prefixLength;
+
+      String[] prefixes;
+      Term[] keys;
+      int next;
+
+      @Setup(Level.Trial)
+      public void setUp(Dictionary dictionary) {
+
+         Random random = new Random(7);
+         prefixes = new String[PREFIXES];
+         keys = new Term[PREFIXES];
+
+         for (int i = 0; i < PREFIXES; i++) {
+            String query = dictionary.draw(random).query;
+            prefixes[i] = query.substring(0, Math.min(prefixLength, query.length()));
+            keys[i] = new Term(prefixes[i], 0);
+         }
+      }
+
+      int next() {
+         next = (next + 1) & (PREFIXES - 1);
+         return next;
+      }
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public Autocomplete construct(Dictionary d) {
+      return new Autocomplete(d.terms);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.SingleShotTime)
+   @OutputTimeUnit(TimeUnit.MILLISECONDS)
+   public Autocomplete constructParallel(Dictionary d) {
+      return new Autocomplete(d.terms, true);
+   }
+
+   @Benchmark
+   public Term[] allMatches(Dictionary d, Lookups l) {
+      return d.autocomplete.allMatches(l.prefixes[l.next()]);
+   }
+
+   @Benchmark
+   public Term[] topMatches(Dictionary d, Lookups l) {
+      return d.autocomplete.topMatches(l.prefixes[l.next()], 10);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public int firstIndexOf(Dictionary d, Lookups l) {
+      Term key = l.keys[l.next()];
+      return BinarySearch.firstIndexOf(d.sorted, key, Term.byPrefixOrder(key.query.length()));
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public int lastIndexOf(Dictionary d, Lookups l) {
+      Term key = l.keys[l.next()];
+      return BinarySearch.lastIndexOf(d.sorted, key, Term.byPrefixOrder(key.query.length()));
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public long prefixRange(Dictionary d, Lookups l) {
+      return BinarySearch.prefixRange(d.sorted, l.prefixes[l.next()]);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public long packedPrefixRange(Dictionary d, Lookups l) {
+      return BinarySearch.prefixRange(d.packed, l.prefixes[l.next()]);
+   }
+
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public long eytzingerPrefixRange(Dictionary d, Lookups l) {
+      return d.eytzinger.prefixRange(l.prefixes[l.next()]);
+   }
+
+   public static void main(String[] args) throws RunnerException {
+
+      Options options = new OptionsBuilder()
+         .include(AutocompleteBenchmark.class.getSimpleName())
+         .addProfiler(GCProfiler.class)
+         .build();
+
+      new Runner(options).run();
+   }
+}
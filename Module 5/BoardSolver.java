@@ -0,0 +1,229 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable word search board prepared for solving. The neighbours of every
+ * position are computed once into a flat int table, so a search needs no
+ * Position objects. Each search keeps its visited tiles in a boolean array
+ * and its word in one reusable StringBuilder, and advances a Lexicon cursor
+ * one tile at a time, so a full solve allocates little beyond the words it
+ * finds.
+ */
+public class BoardSolver {
+   private final String[] tiles;
+   private final int[] adjStart;
+   private final int[] adj;
+
+   /**
+    * Prepares the given board.
+    *
+    * @param letterArray The tiles of a square board in row-major order.
+    * @throws IllegalArgumentException if letterArray is null, or is not
+    *     square.
+    */
+   public BoardSolver(String[] letterArray) {
+      if (letterArray == null) {
+         throw new IllegalArgumentException();
+      }
+      int n = (int) Math.sqrt(letterArray.length);
+      if ((n * n) != letterArray.length) {
+         throw new IllegalArgumentException();
+      }
+      tiles = letterArray.clone();
+      adjStart = new int[tiles.length + 1];
+      int[] table = new int[8 * tiles.length];
+      int k = 0;
+      for (int cell = 0; cell < tiles.length; cell++) {
+         adjStart[cell] = k;
+         int x = cell % n;
+         int y = cell / n;
+         for (int j = y - 1; j <= y + 1; j++) {
+            for (int i = x - 1; i <= x + 1; i++) {
+               if (i >= 0 && i < n && j >= 0 && j < n && !(i == x && j == y)) {
+                  table[k++] = (j * n) + i;
+               }
+            }
+         }
+      }
+      adjStart[tiles.length] = k;
+      adj = Arrays.copyOf(table, k);
+   }
+
+   /**
+    * Returns the number of positions on the board.
+    *
+    * @return N^2 for an NxN board
+    */
+   public int size() {
+      return tiles.length;
+   }
+
+   /**
+    * Finds every word in the lexicon of at least min characters that can be
+    * spelled on the board.
+    *
+    * @param lexicon The words to look for
+    * @param min The minimum word length, in characters
+    * @return the words found, in ascending order
+    */
+   public SortedSet<String> solve(Lexicon lexicon, int min) {
+      SortedSet<String> found = new TreeSet<String>();
+      Search search = new Search(lexicon, min, found);
+      for (int cell = 0; cell < tiles.length; cell++) {
+         search.from(cell);
+      }
+      return found;
+   }
+
+   /**
+    * Finds the same words as solve, searching from each starting position as
+    * a separate task on the common fork-join pool. Every task has its own
+    * visited tiles and word buffer, and their results are merged at the end.
+    * The lexicon is only read, so it may be shared with other solves.
+    *
+    * @param lexicon The words to look for
+    * @param min The minimum word length, in characters
+    * @return the words found, in ascending order
+    */
+   public SortedSet<String> solveParallel(final Lexicon lexicon, final int min) {
+      List<List<String>> parts = IntStream.range(0, tiles.length).parallel()
+         .mapToObj(new IntFunction<List<String>>() {
+            public List<String> apply(int cell) {
+               List<String> part = new ArrayList<String>();
+               new Search(lexicon, min, part).from(cell);
+               return part;
+            }
+         }).collect(Collectors.<List<String>>toList());
+      SortedSet<String> found = new TreeSet<String>();
+      for (List<String> part : parts) {
+         found.addAll(part);
+      }
+      return found;
+   }
+
+   /**
+    * Solves many boards against one lexicon. Each board becomes a task on
+    * the common fork-join pool, and the lexicon is shared by all of them
+    * since it is only read. The returned stream is sequential and ordered:
+    * its i-th element is the result for the i-th board. It reads boards
+    * ahead of the consumer, keeping a bounded number of them solving while
+    * it waits for the next result in line.
+    *
+    * @param boards The boards to solve, each in row-major order
+    * @param lexicon The words to look for
+    * @param min The minimum word length, in characters
+    * @return a stream of the words found on each board, in the order of boards
+    * @throws IllegalArgumentException if boards or lexicon is null. A board
+    *     that is null or not square causes an IllegalArgumentException when
+    *     its result is read from the stream.
+    */
+   public static Stream<SortedSet<String>> solveAll(final Stream<String[]> boards,
+         final Lexicon lexicon, final int min) {
+      if (boards == null || lexicon == null) {
+         throw new IllegalArgumentException();
+      }
+      final Iterator<String[]> input = boards.sequential().iterator();
+      final int ahead = 2 * ForkJoinPool.getCommonPoolParallelism();
+      Iterator<SortedSet<String>> results = new Iterator<SortedSet<String>>() {
+         private final ArrayDeque<ForkJoinTask<SortedSet<String>>> solving =
+            new ArrayDeque<ForkJoinTask<SortedSet<String>>>();
+
+         public boolean hasNext() {
+            fill();
+            return !solving.isEmpty();
+         }
+
+         public SortedSet<String> next() {
+            fill();
+            if (solving.isEmpty()) {
+               throw new NoSuchElementException();
+            }
+            return solving.poll().join();
+         }
+
+         private void fill() {
+            while (solving.size() < ahead && input.hasNext()) {
+               final String[] board = input.next();
+               solving.add(ForkJoinPool.commonPool().submit(new Callable<SortedSet<String>>() {
+                  public SortedSet<String> call() {
+                     return new BoardSolver(board).solve(lexicon, min);
+                  }
+               }));
+            }
+         }
+      };
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results,
+         Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(new Runnable() {
+            public void run() {
+               boards.close();
+            }
+         });
+   }
+
+   /**
+    * State of one depth-first search. Searches share nothing, so separate
+    * searches over the same board may run on separate threads.
+    */
+   private class Search {
+      private final Lexicon lexicon;
+      private final int min;
+      private final Collection<String> found;
+      private final boolean[] visited = new boolean[tiles.length];
+      private final StringBuilder word = new StringBuilder();
+
+      Search(Lexicon lexicon, int min, Collection<String> found) {
+         this.lexicon = lexicon;
+         this.min = min;
+         this.found = found;
+      }
+
+      /**
+       * Adds to found every word whose path starts at the given position.
+       *
+       * @param cell The starting position
+       */
+      void from(int cell) {
+         int node = lexicon.advance(lexicon.root(), tiles[cell]);
+         if (node != Lexicon.NONE) {
+            visit(cell, node);
+         }
+      }
+
+      private void visit(int cell, int node) {
+         int length = word.length();
+         word.append(tiles[cell]);
+         visited[cell] = true;
+         if (lexicon.isWord(node) && word.length() >= min) {
+            found.add(word.toString());
+         }
+         for (int a = adjStart[cell]; a < adjStart[cell + 1]; a++) {
+            int next = adj[a];
+            if (!visited[next]) {
+               int child = lexicon.advance(node, tiles[next]);
+               if (child != Lexicon.NONE) {
+                  visit(next, child);
+               }
+            }
+         }
+         visited[cell] = false;
+         word.setLength(length);
+      }
+   }
+}
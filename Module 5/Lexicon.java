@@ -0,0 +1,435 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable trie over a word list, stored in flat tables. The children of a
+ * node are contiguous and sorted by character, and every node lies on the
+ * path of some word, so a node exists exactly when its path is a valid
+ * prefix.
+ *
+ * <p>Nodes are plain ints and serve as cursors: a search holds the node for
+ * the prefix it has spelled so far and advances it one tile at a time, at a
+ * cost that depends only on the length of the tile.
+ *
+ * <p>The tables can be written to a binary file and mapped back read-only,
+ * so a prebuilt lexicon opens without parsing and its pages are shared by
+ * every game and process that maps the same file. The file is little-endian
+ * and holds a header (magic, node count, word count, a reserved zero), then
+ * the first child and child count of every node, their labels, and a word
+ * flag per node. The magic starts with a byte that is not text in ASCII or
+ * UTF-8 and contains a zero byte, so no word list is mistaken for it.
+ */
+public class Lexicon {
+   /** The cursor returned when a string leaves the lexicon. */
+   public static final int NONE = -1;
+
+   /** The bytes 0x89 'L' 'X' 0x00, read as a little-endian int. */
+   private static final int MAGIC = 0x00584C89;
+   private static final int HEADER = 16;
+
+   private final IntBuffer firstChild;
+   private final IntBuffer childCount;
+   private final CharBuffer labels;
+   private final ByteBuffer words;
+   private final int nodes;
+   private final int size;
+
+   /**
+    * Builds a lexicon holding the given words.
+    *
+    * @param wordsIn The words to store. Duplicates are stored once.
+    * @throws IllegalArgumentException if wordsIn is null or holds a null.
+    */
+   public Lexicon(Collection<String> wordsIn) {
+      this(sort(wordsIn));
+   }
+
+   /**
+    * Builds a lexicon from sorted words without duplicates.
+    */
+   private Lexicon(String[] sorted) {
+      long total = 1;
+      for (String w : sorted) {
+         total += w.length();
+      }
+      if (total > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+      Builder b = new Builder((int) total);
+      b.build(sorted, 0, sorted.length, 0, 0);
+      nodes = b.nodes;
+      size = sorted.length;
+      firstChild = IntBuffer.wrap(Arrays.copyOf(b.firstChild, nodes));
+      childCount = IntBuffer.wrap(Arrays.copyOf(b.childCount, nodes));
+      labels = CharBuffer.wrap(Arrays.copyOf(b.labels, nodes));
+      words = ByteBuffer.wrap(Arrays.copyOf(b.words, nodes));
+   }
+
+   /**
+    * Reads a lexicon from a mapped binary file, checking in one pass that
+    * the children of every node lie within the tables, so that a damaged
+    * file fails here rather than in a later search.
+    */
+   private Lexicon(MappedByteBuffer buffer) {
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (!isBinary(buffer, buffer.capacity())) {
+         throw new IllegalArgumentException();
+      }
+      nodes = buffer.getInt(4);
+      size = buffer.getInt(8);
+      firstChild = slice(buffer, HEADER, 4 * nodes).asIntBuffer();
+      childCount = slice(buffer, HEADER + 4 * nodes, 4 * nodes).asIntBuffer();
+      labels = slice(buffer, HEADER + 8 * nodes, 2 * nodes).asCharBuffer();
+      words = slice(buffer, HEADER + 10 * nodes, nodes);
+      for (int i = 0; i < nodes; i++) {
+         int first = firstChild.get(i);
+         int count = childCount.get(i);
+         if (first < 0 || count < 0 || (long) first + count > nodes) {
+            throw new IllegalArgumentException();
+         }
+      }
+   }
+
+   private static ByteBuffer slice(ByteBuffer buffer, int from, int length) {
+      ByteBuffer b = buffer.duplicate();
+      b.position(from);
+      b.limit(from + length);
+      return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   /**
+    * Determines if a file of the given length whose header is in the given
+    * little-endian buffer was written by write: the magic and reserved word
+    * match, the counts are consistent, and the length is exactly what they
+    * call for.
+    */
+   private static boolean isBinary(ByteBuffer header, long length) {
+      if (length < HEADER || header.getInt(0) != MAGIC || header.getInt(12) != 0) {
+         return false;
+      }
+      int nodes = header.getInt(4);
+      int size = header.getInt(8);
+      return nodes >= 1 && size >= 0 && size <= nodes && length == HEADER + 11L * nodes;
+   }
+
+   private static String[] sort(Collection<String> wordsIn) {
+      if (wordsIn == null) {
+         throw new IllegalArgumentException();
+      }
+      String[] sorted = wordsIn.toArray(new String[wordsIn.size()]);
+      for (String w : sorted) {
+         if (w == null) {
+            throw new IllegalArgumentException();
+         }
+      }
+      return unique(sorted, sorted.length);
+   }
+
+   /**
+    * Sorts the first n words and returns them without duplicates.
+    */
+   private static String[] unique(String[] a, int n) {
+      Arrays.sort(a, 0, n);
+      int m = 0;
+      for (int i = 0; i < n; i++) {
+         if (m == 0 || !a[i].equals(a[m - 1])) {
+            a[m++] = a[i];
+         }
+      }
+      return Arrays.copyOf(a, m);
+   }
+
+   /**
+    * Opens a lexicon file. A binary file written by write is mapped
+    * read-only once its whole header and length check out, and fails with
+    * an IllegalArgumentException if its tables do not. Any other file,
+    * including one whose header does not, is read as a word list: its bytes
+    * are read in one go through NIO and split on whitespace, and each word
+    * is converted to upper case, as loadLexicon always has.
+    *
+    * @param fileName The name of the file to open
+    * @return the lexicon in the file
+    * @throws IllegalArgumentException if fileName is null, cannot be opened,
+    *     or is a damaged binary file.
+    */
+   public static Lexicon open(String fileName) {
+      if (fileName == null) {
+         throw new IllegalArgumentException();
+      }
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+         long length = channel.size();
+         if (length >= HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+               if (channel.read(header, header.position()) < 0) {
+                  break;
+               }
+            }
+            if (!header.hasRemaining() && isBinary(header, length)) {
+               return new Lexicon(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+            }
+         }
+         if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+         }
+         ByteBuffer bytes = ByteBuffer.allocate((int) length);
+         while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) {
+               break;
+            }
+         }
+         return new Lexicon(parse(bytes.array(), bytes.position()));
+      }
+      catch (IOException e) {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+   /**
+    * Splits the first n bytes on whitespace into upper case words, sorted
+    * and without duplicates. ASCII words are converted byte by byte; others
+    * are decoded as UTF-8.
+    */
+   private static String[] parse(byte[] bytes, int n) {
+      String[] found = new String[16];
+      int count = 0;
+      int i = 0;
+      while (i < n) {
+         while (i < n && isSpace(bytes[i])) {
+            i++;
+         }
+         int start = i;
+         boolean ascii = true;
+         while (i < n && !isSpace(bytes[i])) {
+            ascii &= bytes[i] >= 0;
+            i++;
+         }
+         if (i > start) {
+            if (count == found.length) {
+               found = Arrays.copyOf(found, 2 * count);
+            }
+            found[count++] = ascii ? upperAscii(bytes, start, i)
+               : new String(bytes, start, i - start, StandardCharsets.UTF_8).toUpperCase();
+         }
+      }
+      return unique(found, count);
+   }
+
+   private static boolean isSpace(byte b) {
+      return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+   }
+
+   private static String upperAscii(byte[] bytes, int from, int to) {
+      char[] c = new char[to - from];
+      for (int i = from; i < to; i++) {
+         byte b = bytes[i];
+         c[i - from] = (char) (b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b);
+      }
+      return new String(c);
+   }
+
+   /**
+    * Writes the lexicon to a binary file that open maps instead of parsing.
+    *
+    * @param fileName The name of the file to write
+    * @throws IllegalArgumentException if fileName is null or cannot be written.
+    */
+   public void write(String fileName) {
+      if (fileName == null) {
+         throw new IllegalArgumentException();
+      }
+      long length = HEADER + 11L * nodes;
+      if (length > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException();
+      }
+      try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+         StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+         out.order(ByteOrder.LITTLE_ENDIAN);
+         out.putInt(MAGIC).putInt(nodes).putInt(size).putInt(0);
+         for (int i = 0; i < nodes; i++) {
+            out.putInt(firstChild.get(i));
+         }
+         for (int i = 0; i < nodes; i++) {
+            out.putInt(childCount.get(i));
+         }
+         for (int i = 0; i < nodes; i++) {
+            out.putChar(labels.get(i));
+         }
+         for (int i = 0; i < nodes; i++) {
+            out.put(words.get(i));
+         }
+         out.force();
+      }
+      catch (IOException e) {
+         throw new IllegalArgumentException(e);
+      }
+   }
+
+   /**
+    * Returns the cursor for the empty prefix.
+    *
+    * @return the root node
+    */
+   public int root() {
+      return 0;
+   }
+
+   /**
+    * Advances a cursor over the characters of a board tile.
+    *
+    * @param node The cursor for the prefix spelled so far
+    * @param tile The characters to append
+    * @return the cursor for the longer prefix, or NONE if no word starts with it
+    */
+   public int advance(int node, String tile) {
+      for (int i = 0; i < tile.length() && node != NONE; i++) {
+         node = child(node, tile.charAt(i));
+      }
+      return node;
+   }
+
+   /**
+    * Returns the child of node labeled c.
+    *
+    * @param node The cursor to advance
+    * @param c The character to append
+    * @return the cursor for the longer prefix, or NONE if no word starts with it
+    */
+   public int child(int node, char c) {
+      int first = firstChild.get(node);
+      int last = first + childCount.get(node) - 1;
+      while (first <= last) {
+         int mid = first + (last - first) / 2;
+         char m = labels.get(mid);
+         if (c < m) {
+            last = mid - 1;
+         }
+         else if (c > m) {
+            first = mid + 1;
+         }
+         else {
+            return mid;
+         }
+      }
+      return NONE;
+   }
+
+   /**
+    * Determines if the prefix a cursor stands for is a word.
+    *
+    * @param node A cursor other than NONE
+    * @return true if the path to node spells a word, false otherwise.
+    */
+   public boolean isWord(int node) {
+      return words.get(node) != 0;
+   }
+
+   /**
+    * Determines if the given word is in the lexicon.
+    *
+    * @param word The word to check
+    * @return true if word is in the lexicon, false otherwise.
+    */
+   public boolean contains(String word) {
+      int node = advance(root(), word);
+      return node != NONE && isWord(node);
+   }
+
+   /**
+    * Determines if some word in the lexicon starts with the given prefix.
+    *
+    * @param prefix The prefix to check
+    * @return true if a word starts with prefix, false otherwise.
+    */
+   public boolean isPrefix(String prefix) {
+      return size > 0 && advance(root(), prefix) != NONE;
+   }
+
+   /**
+    * Returns the number of words.
+    *
+    * @return the number of distinct words in the lexicon
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Growable tables for building a trie from sorted words.
+    */
+   private static class Builder {
+      private final int[] firstChild;
+      private final int[] childCount;
+      private final char[] labels;
+      private final byte[] words;
+      private int nodes = 1;
+
+      Builder(int capacity) {
+         firstChild = new int[capacity];
+         childCount = new int[capacity];
+         labels = new char[capacity];
+         words = new byte[capacity];
+      }
+
+      /**
+       * Fills in node, whose path is the common prefix of length depth of
+       * the sorted words in [lo, hi), and every node below it. Each node
+       * allocates its children side by side. Pending nodes are kept on an
+       * explicit stack rather than the call stack, so words of any length
+       * can be stored.
+       */
+      void build(String[] sorted, int lo, int hi, int depth, int node) {
+         ArrayDeque<int[]> pending = new ArrayDeque<int[]>();
+         pending.push(new int[] {lo, hi, depth, node});
+         while (!pending.isEmpty()) {
+            int[] next = pending.pop();
+            fill(sorted, next[0], next[1], next[2], next[3], pending);
+         }
+      }
+
+      /**
+       * Fills in one node and pushes its children onto pending, the first
+       * child on top.
+       */
+      private void fill(String[] sorted, int lo, int hi, int depth, int node,
+            ArrayDeque<int[]> pending) {
+         if (lo < hi && sorted[lo].length() == depth) {
+            words[node] = 1;
+            lo++;
+         }
+         int count = 0;
+         for (int i = lo; i < hi; i++) {
+            if (i == lo || sorted[i].charAt(depth) != sorted[i - 1].charAt(depth)) {
+               count++;
+            }
+         }
+         int base = nodes;
+         nodes += count;
+         firstChild[node] = base;
+         childCount[node] = count;
+         int child = base + count - 1;
+         int end = hi;
+         for (int i = hi - 1; i >= lo; i--) {
+            if (i == lo || sorted[i - 1].charAt(depth) != sorted[end - 1].charAt(depth)) {
+               labels[child] = sorted[i].charAt(depth);
+               pending.push(new int[] {i, end, depth + 1, child});
+               child--;
+               end = i;
+            }
+         }
+      }
+   }
+}
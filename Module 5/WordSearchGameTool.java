@@ -1,17 +1,14 @@
 import java.util.List;
 import java.util.LinkedList;
 import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.Scanner;
 import java.util.Iterator;
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.util.stream.Stream;
 
 public class WordSearchGameTool implements WordSearchGame {
-   private TreeSet<String> lexicon;
+   private Lexicon lexicon;
    private String[][] board;
    private int boardSize;
-   private SortedSet<String> set;
+   private BoardSolver solver;
    
    public WordSearchGameTool() {
       lexicon = null;
@@ -25,9 +22,12 @@ public class WordSearchGameTool implements WordSearchGame {
       board[2][2] = "B"; board[2][3] = "O"; 
       board[3][0] = "Q"; board[3][1] = "T"; 
       board[3][2] = "T"; board[3][3] = "Y";
+      solver = new BoardSolver(rowMajor());
    }
    /**
-     * Loads the lexicon into a data structure for later use. 
+     * Loads the lexicon into a data structure for later use. The file may be
+     * a word list, which is read through NIO in one pass, or a binary lexicon
+     * written by Lexicon.write, which is memory-mapped without parsing.
      * 
      * @param fileName A string containing the name of the file to be opened.
      * @throws IllegalArgumentException if fileName is null
@@ -37,18 +37,7 @@ public class WordSearchGameTool implements WordSearchGame {
       if (fileName == null) {
          throw new IllegalArgumentException();
       }
-      try {
-         lexicon = new TreeSet<String>();
-         File file = new File(fileName);
-         Scanner scanFile = new Scanner(file);
-         while (scanFile.hasNext()) {
-            lexicon.add(scanFile.next().toUpperCase());
-         }
-         scanFile.close();
-      }
-      catch (FileNotFoundException e) {
-         throw new IllegalArgumentException();
-      }
+      lexicon = Lexicon.open(fileName);
    }
    
    /**
@@ -80,6 +69,20 @@ public class WordSearchGameTool implements WordSearchGame {
          }
       }
       boardSize = a;
+      solver = new BoardSolver(letterArray);
+   }
+   
+   /**
+    * Returns the board as an array in row-major order.
+    *
+    * @return the contents of the board, position 0 first
+    */
+   private String[] rowMajor() {
+      String[] letterArray = new String[boardSize * boardSize];
+      for (int i = 0; i < letterArray.length; i++) {
+         letterArray[i] = board[i / boardSize][i % boardSize];
+      }
+      return letterArray;
    }
    
    /**
@@ -112,50 +115,64 @@ public class WordSearchGameTool implements WordSearchGame {
      */
      
    public SortedSet<String> getAllScorableWords(int minimumWordLength) {
+      return getAllScorableWords(minimumWordLength, false);
+   }
+   
+   /**
+    * Retrieves all scorable words on the game board, optionally searching
+    * from every starting position in parallel. Parallel search pays off on
+    * large boards, since each starting position is an independent task.
+    * 
+    * @param minimumWordLength The minimum allowed length (i.e., number of
+    *     characters) for any word found on the board.
+    * @param parallel true to search on all available cores
+    * @return java.util.SortedSet which contains all the words of minimum length
+    *     found on the game board and in the lexicon.
+    * @throws IllegalArgumentException if minimumWordLength < 1
+    * @throws IllegalStateException if loadLexicon has not been called.
+    */
+   
+   public SortedSet<String> getAllScorableWords(int minimumWordLength,
+      boolean parallel) {
       if (minimumWordLength < 1) {
          throw new IllegalArgumentException();
       }
       if (lexicon == null) {
          throw new IllegalStateException();
       }
-      set = new TreeSet<String>();
-      LinkedList<Integer> linkedSet = new LinkedList<Integer>();
-      for (int i = 0; i < (boardSize * boardSize); i++) {
-         linkedSet.add(i);
-         if (isValidWord(toWord(linkedSet))
-            && toWord(linkedSet).length() 
-            >= minimumWordLength) {
-            set.add(toWord(linkedSet));
-         }
-         if (isValidPrefix(toWord(linkedSet))) {
-            wordBoardSearch(linkedSet, minimumWordLength);
-         }
-         linkedSet.clear();
+      if (parallel) {
+         return solver.solveParallel(lexicon, minimumWordLength);
       }
-      return set;
+      return solver.solve(lexicon, minimumWordLength);
    }
    
-   private LinkedList<Integer> wordBoardSearch(LinkedList<Integer> linkedSet,
-      int min) {
-      Position[] adjArray = new Position(linkedSet.getLast()).adjacent(linkedSet);
-      for (Position p : adjArray) {
-         if (p == null) {
-            break;
-         }
-         linkedSet.add(p.getIndex());
-         if (isValidPrefix(toWord(linkedSet))) {
-            if (isValidWord(toWord(linkedSet))
-               && toWord(linkedSet).length() >= min) {
-               set.add(toWord(linkedSet));
-            }
-            wordBoardSearch(linkedSet, min);
-         }
-         else {
-            linkedSet.removeLast();
-         }
+   /**
+    * Retrieves all scorable words on each of many boards, sharing this game's
+    * lexicon. The current board is left unchanged. Boards are solved in
+    * parallel on the common fork-join pool, a bounded number ahead of the
+    * consumer. The returned stream is sequential, and its i-th element
+    * holds the words on the i-th board.
+    * 
+    * @param boards The boards to solve, each in the form taken by setBoard
+    * @param minimumWordLength The minimum allowed length (i.e., number of
+    *     characters) for any word found on a board.
+    * @return a stream of the scorable words on each board, in the order of
+    *     boards
+    * @throws IllegalArgumentException if boards is null or minimumWordLength < 1.
+    *     A board that is null or not square causes an IllegalArgumentException
+    *     when its result is read from the stream.
+    * @throws IllegalStateException if loadLexicon has not been called.
+    */
+   
+   public Stream<SortedSet<String>> getAllScorableWords(Stream<String[]> boards,
+      int minimumWordLength) {
+      if (boards == null || minimumWordLength < 1) {
+         throw new IllegalArgumentException();
       }
-      linkedSet.removeLast();
-      return linkedSet;
+      if (lexicon == null) {
+         throw new IllegalStateException();
+      }
+      return BoardSolver.solveAll(boards, lexicon, minimumWordLength);
    }
    
    /**
@@ -227,11 +244,7 @@ public class WordSearchGameTool implements WordSearchGame {
       if (lexicon == null) {
          throw new IllegalStateException();
       }
-      String aux = lexicon.ceiling(prefixToCheck);
-      if (aux != null) {
-         return aux.startsWith(prefixToCheck);
-      }
-      return false;
+      return lexicon.isPrefix(prefixToCheck);
    }
    
    /**